@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.marcomoesman.verdant.util.ArchiveEntryIndex;
+import com.marcomoesman.verdant.util.JarEntryUtility;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArchiveIndexBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int entries;
+
+	@Param({ "2", "6" })
+	public int packageDepth;
+
+	private File archive;
+	private JarFile jarFile;
+	private List<String> entryNames;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		this.archive = File.createTempFile("verdant-index", ".jar");
+		SyntheticArchive.generate(this.archive, this.entries, this.packageDepth);
+		this.jarFile = new JarFile(this.archive);
+		this.entryNames = new JarEntryUtility(this.jarFile).getAllEntriesFromJar();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		this.jarFile.close();
+		this.archive.delete();
+	}
+
+	@Benchmark
+	public List<String> allEntriesFromJar() {
+		return new JarEntryUtility(this.jarFile).getAllEntriesFromJar();
+	}
+
+	@Benchmark
+	public List<String> entriesWithoutInnerClasses() {
+		return JarEntryUtility.getEntriesWithoutInnerClasses(this.entryNames);
+	}
+
+	@Benchmark
+	public Map<String, List<String>> innerClassMap() {
+		return JarEntryUtility.getInnerClassMap(this.entryNames);
+	}
+
+	@Benchmark
+	public ArchiveEntryIndex entryIndexFromJar() {
+		// One scan of the central directory for both the visible entries and the inner classes
+		return ArchiveEntryIndex.create(this.jarFile);
+	}
+
+}
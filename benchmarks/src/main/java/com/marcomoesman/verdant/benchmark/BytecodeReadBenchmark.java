@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.marcomoesman.verdant.fernflower.FernflowerBridge;
+import com.marcomoesman.verdant.fernflower.MappedBytecodeProvider;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BytecodeReadBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int entries;
+
+	@Param({ "zip", "mapped" })
+	public String reader;
+
+	private File archive;
+	private FernflowerBridge bridge;
+	private List<String> classEntries;
+	private byte[] classBytes;
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		this.archive = File.createTempFile("verdant-read", ".jar");
+		SyntheticArchive.generate(this.archive, this.entries, 4);
+		this.bridge = new FernflowerBridge();
+		if (this.reader.equals("mapped"))
+			this.bridge.setBytecodeProvider(new MappedBytecodeProvider());
+		this.classEntries = new ArrayList<String>();
+		for (String entryName : SyntheticArchive.getEntryNames(this.entries, 4))
+			if (entryName.endsWith(".class"))
+				this.classEntries.add(entryName);
+		this.classBytes = SyntheticArchive.createEntry(this.classEntries.get(0));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.bridge.getArchiveManager().close();
+		this.archive.delete();
+	}
+
+	@Benchmark
+	public byte[] getBytecode() throws IOException {
+		// Spread over the archive, as a full decompile reads every class once
+		String entryName = this.classEntries.get(this.next++ % this.classEntries.size());
+		return this.bridge.getBytecode(this.archive.getAbsolutePath(), entryName);
+	}
+
+	@Benchmark
+	public byte[] readBytes() throws IOException {
+		return this.bridge.readBytes(new ByteArrayInputStream(this.classBytes), this.classBytes.length);
+	}
+
+}
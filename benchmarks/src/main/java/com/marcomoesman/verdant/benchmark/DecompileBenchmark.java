@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.marcomoesman.verdant.fernflower.FFDecompiledClass;
+import com.marcomoesman.verdant.fernflower.FernflowerBridge;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DecompileBenchmark {
+
+	// The archive is context for every class, so its size matters as well
+	@Param({ "1000", "10000" })
+	public int entries;
+
+	private File archive;
+	private FernflowerBridge bridge;
+	private List<String> classEntries;
+	private int next = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		this.archive = File.createTempFile("verdant-decompile", ".jar");
+		SyntheticArchive.generate(this.archive, this.entries, 4);
+		this.bridge = new FernflowerBridge();
+		this.bridge.getOptions().put(IFernflowerPreferences.LOG_LEVEL, "warn");
+		this.classEntries = new ArrayList<String>();
+		for (String entryName : SyntheticArchive.getEntryNames(this.entries, 4))
+			if (entryName.endsWith(".class") && !entryName.contains("$"))
+				this.classEntries.add(entryName);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.bridge.getArchiveManager().close();
+		this.archive.delete();
+	}
+
+	@Benchmark
+	public FFDecompiledClass decompileClass() {
+		// The same path as opening a class in the project window
+		String entryName = this.classEntries.get(this.next++ % this.classEntries.size());
+		this.bridge.decompileEntries(this.archive, Collections.singletonList(entryName));
+		return this.bridge.getDecompiledClass(entryName.substring(0, entryName.length() - 5) + "java");
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeNode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.marcomoesman.verdant.ui.util.ArchiveTreeIndex;
+import com.marcomoesman.verdant.ui.util.ArchiveTreeModel;
+import com.marcomoesman.verdant.util.JarEntryUtility;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryTreeBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int entries;
+
+	@Param({ "2", "6" })
+	public int packageDepth;
+
+	private List<String> entryNames;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		// The same entries the project window shows
+		this.entryNames = JarEntryUtility.getEntriesWithoutInnerClasses(SyntheticArchive.getEntryNames(this.entries, this.packageDepth));
+	}
+
+	@Benchmark
+	public ArchiveTreeModel buildTreeModel() {
+		// What opening an archive costs, packages are only loaded when expanded
+		return new ArchiveTreeModel("synthetic.jar", ArchiveTreeIndex.create(this.entryNames));
+	}
+
+	@Benchmark
+	public int buildExpandedTree() {
+		// Every package expanded, comparable to the legacy builder
+		ArchiveTreeModel model = new ArchiveTreeModel("synthetic.jar", ArchiveTreeIndex.create(this.entryNames));
+		return countNodes((TreeNode) model.getRoot());
+	}
+
+	private static int countNodes(TreeNode node) {
+		int count = 1;
+		for (int i = 0; i < node.getChildCount(); i++)
+			count += countNodes(node.getChildAt(i));
+		return count;
+	}
+
+	@Benchmark
+	public DefaultMutableTreeNode legacyBuildDirectoryTree() {
+		// The old builder sorts the given list, so every run starts from the archive order
+		return LegacyDirectoryTreeBuilder.build("synthetic.jar", new ArrayList<String>(this.entryNames));
+	}
+
+}
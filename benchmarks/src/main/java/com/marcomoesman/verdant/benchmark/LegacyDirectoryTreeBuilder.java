@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+
+import com.marcomoesman.verdant.ui.util.TreeNodeUserObject;
+
+/**
+ * The project tree builder before it was replaced by {@link com.marcomoesman.verdant.ui.util.ArchiveTreeIndex},
+ * kept as the baseline of {@link DirectoryTreeBenchmark}.
+ */
+public class LegacyDirectoryTreeBuilder {
+
+	private LegacyDirectoryTreeBuilder() {}
+
+	public static DefaultMutableTreeNode build(String rootName, List<String> jarEntries) {
+		TreeNodeUserObject topNodeUserObject = new TreeNodeUserObject(rootName);
+		DefaultMutableTreeNode top = new DefaultMutableTreeNode(topNodeUserObject);
+		List<String> sort = new ArrayList<String>();
+		Collections.sort(jarEntries, String.CASE_INSENSITIVE_ORDER);
+		for (String m : jarEntries)
+			if (m.contains("META-INF") && !sort.contains(m))
+				sort.add(m);
+		Set<String> set = new HashSet<String>();
+		for (String m : jarEntries) {
+			if (m.contains("/")) {
+				set.add(m.substring(0, m.lastIndexOf("/") + 1));
+			}
+		}
+		List<String> packs = Arrays.asList(set.toArray(new String[] {}));
+		Collections.sort(packs, String.CASE_INSENSITIVE_ORDER);
+		Collections.sort(packs, new Comparator<String>() {
+			public int compare(String o1, String o2) {
+				return o2.split("/").length - o1.split("/").length;
+			}
+		});
+		for (String pack : packs)
+			for (String m : jarEntries)
+				if (!m.contains("META-INF") && m.contains(pack) && !m.replace(pack, "").contains("/"))
+					sort.add(m);
+		for (String m : jarEntries)
+			if (!m.contains("META-INF") && !m.contains("/") && !sort.contains(m))
+				sort.add(m);
+		for (String pack : sort) {
+			LinkedList<String> list = new LinkedList<String>(Arrays.asList(pack.split("/")));
+			loadNodesByNames(top, list);
+		}
+		return top;
+	}
+
+	public static DefaultMutableTreeNode loadNodesByNames(DefaultMutableTreeNode node, List<String> originalNames) {
+		List<TreeNodeUserObject> args = new ArrayList<>();
+		for (String originalName : originalNames) {
+			args.add(new TreeNodeUserObject(originalName));
+		}
+		return loadNodesByUserObject(node, args);
+	}
+
+	public static DefaultMutableTreeNode loadNodesByUserObject(DefaultMutableTreeNode node, List<TreeNodeUserObject> args) {
+		if (args.size() > 0) {
+			TreeNodeUserObject name = args.remove(0);
+			DefaultMutableTreeNode nod = getChild(node, name);
+			if (nod == null)
+				nod = new DefaultMutableTreeNode(name);
+			node.add(loadNodesByUserObject(nod, args));
+		}
+		return node;
+	}
+
+	public static DefaultMutableTreeNode getChild(DefaultMutableTreeNode node, TreeNodeUserObject name) {
+		@SuppressWarnings("unchecked")
+		Enumeration<DefaultMutableTreeNode> entry = node.children();
+		while (entry.hasMoreElements()) {
+			DefaultMutableTreeNode nods = entry.nextElement();
+			if (((TreeNodeUserObject) nods.getUserObject()).getRealName().equals(name.getRealName())) {
+				return nods;
+			}
+		}
+		return null;
+	}
+
+}
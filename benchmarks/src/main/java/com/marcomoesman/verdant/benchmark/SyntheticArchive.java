@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates archives of valid class files, so the benchmarks run without any real jars.
+ * Usage: {@code SyntheticArchive <file> <entries> <package depth>}
+ */
+public class SyntheticArchive {
+
+	public static final int CLASSES_PER_PACKAGE = 40;
+	public static final int METHODS_PER_CLASS = 4;
+
+	private SyntheticArchive() {}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("Usage: SyntheticArchive <file> <entries> <package depth>");
+			System.exit(2);
+		}
+		File file = generate(new File(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+		System.out.println("Generated " + args[1] + " entries in " + file);
+	}
+
+	public static File generate(File file, int entries, int depth) throws IOException {
+		try (ZipOutputStream stream = new ZipOutputStream(new FileOutputStream(file))) {
+			for (String entryName : getEntryNames(entries, depth)) {
+				stream.putNextEntry(new ZipEntry(entryName));
+				stream.write(createEntry(entryName));
+				stream.closeEntry();
+			}
+		}
+		return file;
+	}
+
+	public static List<String> getEntryNames(int entries, int depth) {
+		// Every fifth class has a member class and every tenth an anonymous one, as in typical application jars
+		List<String> entryNames = new ArrayList<String>(entries);
+		entryNames.add("META-INF/MANIFEST.MF");
+		int packages = Math.max(1, entries / CLASSES_PER_PACKAGE);
+		for (int i = 0; entryNames.size() < entries; i++) {
+			String path = getPackage(i % packages, packages, depth) + "C" + i;
+			entryNames.add(path + ".class");
+			if (i % 5 == 0)
+				entryNames.add(path + "$Inner.class");
+			if (i % 10 == 0)
+				entryNames.add(path + "$1.class");
+			if (i % 50 == 0)
+				entryNames.add(path + ".properties");
+		}
+		return entryNames.subList(0, entries);
+	}
+
+	private static String getPackage(int index, int packages, int depth) {
+		// Packages share their leading segments, spread evenly over the given depth
+		depth = Math.max(1, depth);
+		int fanout = Math.max(2, (int) Math.ceil(Math.pow(packages, 1.0 / depth)));
+		StringBuilder builder = new StringBuilder();
+		for (int level = depth - 1; level >= 0; level--)
+			builder.append('p').append(index / (int) Math.pow(fanout, level) % fanout).append('/');
+		return builder.toString();
+	}
+
+	public static byte[] createEntry(String entryName) {
+		if (entryName.endsWith(".class")) {
+			String className = entryName.substring(0, entryName.length() - 6);
+			int inner = className.indexOf('$');
+			return createClass(className, inner == -1 ? className : className.substring(0, inner));
+		}
+		if (entryName.endsWith(".MF"))
+			return "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+		return ("name=" + entryName + "\n").getBytes(StandardCharsets.UTF_8);
+	}
+
+	public static byte[] createClass(String className, String referencedClass) {
+		// Java 6 class files need no stack map frames, the code is straight-line anyway
+		ConstantPool pool = new ConstantPool();
+		int thisClass = pool.classRef(className);
+		int superClass = pool.classRef("java/lang/Object");
+		int objectInit = pool.reference(10, "java/lang/Object", "<init>", "()V");
+		int value = pool.reference(9, className, "value", "I");
+		int referenced = pool.classRef(referencedClass);
+		int referencedInit = pool.reference(10, referencedClass, "<init>", "()V");
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(body)) {
+			out.writeShort(0x21);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0);
+
+			out.writeShort(1);
+			out.writeShort(0x02);
+			out.writeShort(pool.utf8("value"));
+			out.writeShort(pool.utf8("I"));
+			out.writeShort(0);
+
+			out.writeShort(METHODS_PER_CLASS + 2);
+			writeMethod(out, pool, "<init>", "()V", 1, 1, new byte[] { 0x2a, (byte) 0xb7, (byte) (objectInit >> 8), (byte) objectInit, (byte) 0xb1 });
+			for (int i = 0; i < METHODS_PER_CLASS; i++) {
+				// return this.value + argument * i
+				writeMethod(out, pool, "m" + i, "(I)I", 3, 2, new byte[] { 0x2a, (byte) 0xb4, (byte) (value >> 8), (byte) value, 0x1b,
+						0x10, (byte) i, 0x68, 0x60, (byte) 0xac });
+			}
+			// return new ReferencedClass()
+			writeMethod(out, pool, "next", "()Ljava/lang/Object;", 2, 1, new byte[] { (byte) 0xbb, (byte) (referenced >> 8), (byte) referenced, 0x59,
+					(byte) 0xb7, (byte) (referencedInit >> 8), (byte) referencedInit, (byte) 0xb0 });
+			out.writeShort(0);
+		} catch (IOException exception) {
+			throw new IllegalStateException(exception);
+		}
+
+		ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(classFile)) {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(50);
+			pool.write(out);
+			body.writeTo(out);
+		} catch (IOException exception) {
+			throw new IllegalStateException(exception);
+		}
+		return classFile.toByteArray();
+	}
+
+	private static void writeMethod(DataOutputStream out, ConstantPool pool, String name, String descriptor, int maxStack, int maxLocals, byte[] code) throws IOException {
+		out.writeShort(0x01);
+		out.writeShort(pool.utf8(name));
+		out.writeShort(pool.utf8(descriptor));
+		out.writeShort(1);
+		out.writeShort(pool.utf8("Code"));
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0);
+		out.writeShort(0);
+	}
+
+	private static class ConstantPool {
+
+		private final Map<String, Integer> indices = new LinkedHashMap<String, Integer>();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(this.bytes);
+
+		int utf8(String value) throws IOException {
+			Integer index = this.indices.get("1:" + value);
+			if (index != null)
+				return index;
+			this.out.writeByte(1);
+			this.out.writeUTF(value);
+			return this.add("1:" + value);
+		}
+
+		int classRef(String name) {
+			try {
+				Integer index = this.indices.get("7:" + name);
+				if (index != null)
+					return index;
+				int nameIndex = this.utf8(name);
+				this.out.writeByte(7);
+				this.out.writeShort(nameIndex);
+				return this.add("7:" + name);
+			} catch (IOException exception) {
+				throw new IllegalStateException(exception);
+			}
+		}
+
+		int reference(int tag, String owner, String name, String descriptor) {
+			try {
+				String key = tag + ":" + owner + "." + name + ":" + descriptor;
+				Integer index = this.indices.get(key);
+				if (index != null)
+					return index;
+				int classIndex = this.classRef(owner);
+				int nameAndType = this.nameAndType(name, descriptor);
+				this.out.writeByte(tag);
+				this.out.writeShort(classIndex);
+				this.out.writeShort(nameAndType);
+				return this.add(key);
+			} catch (IOException exception) {
+				throw new IllegalStateException(exception);
+			}
+		}
+
+		private int nameAndType(String name, String descriptor) throws IOException {
+			Integer index = this.indices.get("12:" + name + ":" + descriptor);
+			if (index != null)
+				return index;
+			int nameIndex = this.utf8(name);
+			int descriptorIndex = this.utf8(descriptor);
+			this.out.writeByte(12);
+			this.out.writeShort(nameIndex);
+			this.out.writeShort(descriptorIndex);
+			return this.add("12:" + name + ":" + descriptor);
+		}
+
+		private int add(String key) {
+			int index = this.indices.size() + 1;
+			this.indices.put(key, index);
+			return index;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeShort(this.indices.size() + 1);
+			this.bytes.writeTo(out);
+		}
+
+	}
+
+}
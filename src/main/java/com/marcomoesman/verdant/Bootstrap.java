@@ -24,11 +24,25 @@ package com.marcomoesman.verdant;
 import javax.swing.SwingUtilities;
 
 import com.alee.laf.WebLookAndFeel;
+import com.marcomoesman.verdant.cli.CommandLineInterface;
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.metrics.DecompileMetrics;
 import com.marcomoesman.verdant.ui.UserInterface;
 
 public class Bootstrap {
 	
 	public static void main(String[] args) {
+		// Decompile metrics can be watched over JMX, for example with JConsole
+		DecompileMetrics.register();
+		
+		// Decompile headless when arguments are given
+		if (args.length > 0) {
+			int status = new CommandLineInterface().run(args);
+			Log.flush();
+			System.exit(status);
+			return;
+		}
+		
 		// Install WebLookAndFeel theme and launch User Interface
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
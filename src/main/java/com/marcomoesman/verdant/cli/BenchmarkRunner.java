@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jetbrains.java.decompiler.main.Fernflower;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger.Severity;
+
+import com.marcomoesman.verdant.Verdant;
+import com.marcomoesman.verdant.fernflower.ClassStructureCache;
+import com.marcomoesman.verdant.fernflower.CompactResultStore;
+import com.marcomoesman.verdant.fernflower.DecompileProgress;
+import com.marcomoesman.verdant.fernflower.DecompileScheduler;
+import com.marcomoesman.verdant.fernflower.DecompileWatchdog;
+import com.marcomoesman.verdant.fernflower.FernflowerBridge;
+import com.marcomoesman.verdant.fernflower.LazyDecompiler;
+import com.marcomoesman.verdant.fernflower.MappedBytecodeProvider;
+import com.marcomoesman.verdant.fernflower.Workspace;
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.metrics.DecompileMetrics;
+import com.marcomoesman.verdant.util.ArchiveManager;
+
+public class BenchmarkRunner {
+
+	public static final double DEFAULT_THRESHOLD = 0.10;
+
+	// Report fields compared with the baseline, and whether a lower value is better
+	private static final String[] COMPARED = { "wallMillis", "classesPerSecond", "p50Micros", "p95Micros", "p99Micros", "peakHeapBytes", "gcMillis" };
+	private static final boolean[] LOWER_IS_BETTER = { true, false, true, true, true, true, true };
+
+	private final List<File> corpus = new ArrayList<File>();
+	private File output = null;
+	private File baseline = null;
+	private double threshold = DEFAULT_THRESHOLD;
+	private int warmup = 1;
+
+	public int run(String[] args) {
+		if (!this.parseArguments(args)) {
+			this.printUsage();
+			return CommandLineInterface.EXIT_USAGE;
+		}
+
+		Workspace workspace = new Workspace(new ClassStructureCache(new File(System.getProperty("user.home"), ".verdant" + File.separator + "structures")));
+		Severity level = Log.getLevel();
+		Map<String, Object> report;
+		try {
+			// Only problems are logged while measuring
+			Log.setLevel(Severity.WARN);
+			for (int i = 0; i < this.warmup; i++)
+				this.decompileCorpus(workspace);
+			report = this.measure(workspace);
+		} catch (IOException exception) {
+			System.err.println("Benchmark failed: " + exception);
+			return CommandLineInterface.EXIT_FAILURE;
+		} finally {
+			Log.setLevel(level);
+		}
+
+		List<String> regressions = new ArrayList<String>();
+		if (this.baseline != null) {
+			try {
+				regressions = this.compare(report, new String(Files.readAllBytes(this.baseline.toPath()), StandardCharsets.UTF_8));
+			} catch (IOException exception) {
+				System.err.println("Could not read baseline " + this.baseline + ": " + exception);
+				return CommandLineInterface.EXIT_FAILURE;
+			}
+			report.put("baseline", this.baseline.getPath());
+			report.put("regressions", regressions);
+		}
+
+		String json = toJson(report);
+		if (this.output != null) {
+			try {
+				Files.write(this.output.toPath(), json.getBytes(StandardCharsets.UTF_8));
+			} catch (IOException exception) {
+				System.err.println("Failed to write report to " + this.output + ": " + exception);
+				return CommandLineInterface.EXIT_FAILURE;
+			}
+		} else {
+			System.out.println(json);
+		}
+		for (String regression : regressions)
+			System.err.println("Regression: " + regression);
+		return regressions.isEmpty() ? CommandLineInterface.EXIT_SUCCESS : CommandLineInterface.EXIT_FAILURE;
+	}
+
+	private Map<String, Object> measure(Workspace workspace) throws IOException {
+		List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				heapPools.add(pool);
+			}
+		}
+		long gcMillis = getGcMillis();
+		DecompileMetrics metrics = DecompileMetrics.getInstance();
+		metrics.reset();
+
+		long start = System.nanoTime();
+		List<Map<String, Object>> archives = this.decompileCorpus(workspace);
+		long wallMillis = (System.nanoTime() - start) / 1000000L;
+
+		int classes = 0;
+		for (Map<String, Object> archive : archives)
+			classes += (Integer) archive.get("classes");
+		long peakHeap = 0;
+		for (MemoryPoolMXBean pool : heapPools)
+			peakHeap += pool.getPeakUsage().getUsed();
+
+		Map<String, Object> report = new LinkedHashMap<String, Object>();
+		report.put("verdant", Verdant.getVersion());
+		report.put("decompiler", getDecompilerName());
+		report.put("timestamp", System.currentTimeMillis());
+		report.put("classes", classes);
+		report.put("wallMillis", wallMillis);
+		report.put("classesPerSecond", wallMillis == 0 ? 0D : classes * 1000D / wallMillis);
+		report.put("p50Micros", metrics.getClassLatencyP50Micros());
+		report.put("p95Micros", metrics.getClassLatencyP95Micros());
+		report.put("p99Micros", metrics.getClassLatencyP99Micros());
+		report.put("maxMicros", metrics.getClassLatencyMaxMicros());
+		report.put("peakHeapBytes", peakHeap);
+		report.put("gcMillis", getGcMillis() - gcMillis);
+		report.put("archives", archives);
+		return report;
+	}
+
+	private List<Map<String, Object>> decompileCorpus(Workspace workspace) throws IOException {
+		List<Map<String, Object>> archives = new ArrayList<Map<String, Object>>();
+		for (File file : this.corpus) {
+			long start = System.nanoTime();
+			int classes = this.decompile(file, workspace);
+			Map<String, Object> archive = new LinkedHashMap<String, Object>();
+			archive.put("name", file.getName());
+			archive.put("classes", classes);
+			archive.put("millis", (System.nanoTime() - start) / 1000000L);
+			archives.add(archive);
+		}
+		return archives;
+	}
+
+	private int decompile(File file, Workspace workspace) throws IOException {
+		// The same setup as opening an archive in the project window, without the decompile cache
+		FernflowerBridge fernflowerBridge = new FernflowerBridge(new CompactResultStore(Runtime.getRuntime().maxMemory() / 4, true, true), new ArchiveManager());
+		DecompileWatchdog watchdog = new DecompileWatchdog();
+		watchdog.apply(fernflowerBridge.getOptions());
+		fernflowerBridge.setWatchdog(watchdog);
+		MappedBytecodeProvider bytecodeProvider = new MappedBytecodeProvider();
+		try {
+			bytecodeProvider.getArchive(file);
+			fernflowerBridge.setBytecodeProvider(bytecodeProvider);
+		} catch (IOException exception) {
+			bytecodeProvider = null;
+		}
+
+		DecompileProgress progress = new DecompileProgress();
+		DecompileScheduler decompileScheduler = new DecompileScheduler(file, fernflowerBridge, new LazyDecompiler(file, fernflowerBridge));
+		try {
+			fernflowerBridge.setArchiveContext(workspace.getArchiveContext(file, fernflowerBridge.getArchiveManager()));
+			decompileScheduler.decompile(progress);
+			return progress.getDone();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Benchmark interrupted");
+		} finally {
+			progress.finish();
+			decompileScheduler.shutdown();
+			fernflowerBridge.getArchiveManager().close();
+			if (bytecodeProvider != null)
+				bytecodeProvider.close();
+			fernflowerBridge.cleanup();
+		}
+	}
+
+	private List<String> compare(Map<String, Object> report, String baseline) {
+		List<String> regressions = new ArrayList<String>();
+		for (int i = 0; i < COMPARED.length; i++) {
+			Matcher matcher = Pattern.compile("\"" + COMPARED[i] + "\"\\s*:\\s*(-?[0-9][0-9.eE+-]*)").matcher(baseline);
+			if (!matcher.find())
+				continue;
+			double expected = Double.parseDouble(matcher.group(1));
+			double actual = ((Number) report.get(COMPARED[i])).doubleValue();
+			if (expected <= 0)
+				continue;
+			double change = (actual - expected) / expected;
+			if (LOWER_IS_BETTER[i] ? change > this.threshold : change < -this.threshold)
+				regressions.add(String.format(Locale.ROOT, "%s %.1f -> %.1f (%+.1f%%)", COMPARED[i], expected, actual, change * 100));
+		}
+		return regressions;
+	}
+
+	private static long getGcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+			millis += Math.max(0, collector.getCollectionTime());
+		return millis;
+	}
+
+	private static String getDecompilerName() {
+		// The jar name tells which Fernflower snapshot was measured
+		CodeSource codeSource = Fernflower.class.getProtectionDomain().getCodeSource();
+		if (codeSource == null || codeSource.getLocation() == null)
+			return "unknown";
+		return new File(codeSource.getLocation().getPath()).getName();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static String toJson(Object value) {
+		if (value instanceof Map) {
+			StringBuilder builder = new StringBuilder("{");
+			for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+				if (builder.length() > 1)
+					builder.append(',');
+				builder.append(toJson(entry.getKey())).append(':').append(toJson(entry.getValue()));
+			}
+			return builder.append('}').toString();
+		}
+		if (value instanceof List) {
+			StringBuilder builder = new StringBuilder("[");
+			for (Object element : (List<Object>) value) {
+				if (builder.length() > 1)
+					builder.append(',');
+				builder.append(toJson(element));
+			}
+			return builder.append(']').toString();
+		}
+		if (value instanceof Double)
+			return String.format(Locale.ROOT, "%.2f", (Double) value);
+		if (value instanceof Number)
+			return value.toString();
+		String string = String.valueOf(value);
+		StringBuilder builder = new StringBuilder("\"");
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c == '"' || c == '\\')
+				builder.append('\\').append(c);
+			else if (c < 0x20)
+				builder.append(String.format("\\u%04x", (int) c));
+			else
+				builder.append(c);
+		}
+		return builder.append('"').toString();
+	}
+
+	private boolean parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-o") || arg.equals("--output")) {
+				if (++i >= args.length)
+					return false;
+				this.output = new File(args[i]);
+			} else if (arg.equals("-c") || arg.equals("--compare")) {
+				if (++i >= args.length)
+					return false;
+				this.baseline = new File(args[i]);
+			} else if (arg.equals("-r") || arg.equals("--threshold")) {
+				if (++i >= args.length)
+					return false;
+				try {
+					this.threshold = Integer.parseInt(args[i]) / 100D;
+				} catch (NumberFormatException exception) {
+					return false;
+				}
+			} else if (arg.equals("-w") || arg.equals("--warmup")) {
+				if (++i >= args.length)
+					return false;
+				try {
+					this.warmup = Integer.parseInt(args[i]);
+				} catch (NumberFormatException exception) {
+					return false;
+				}
+			} else if (arg.startsWith("-")) {
+				return false;
+			} else {
+				File input = new File(arg);
+				if (input.isDirectory()) {
+					// Every archive in the directory, in a stable order
+					File[] files = input.listFiles();
+					Arrays.sort(files);
+					for (File file : files)
+						if (file.isFile() && file.getName().toLowerCase().endsWith(".jar"))
+							this.corpus.add(file);
+				} else if (input.isFile()) {
+					this.corpus.add(input);
+				} else {
+					System.err.println("Not a file: " + arg);
+					return false;
+				}
+			}
+		}
+		return !this.corpus.isEmpty();
+	}
+
+	private void printUsage() {
+		System.err.println("Verdant " + Verdant.getVersion());
+		System.err.println("Usage: verdant benchmark [options] <archive or directory>...");
+		System.err.println("  -o, --output <file>    Write the JSON report to a file instead of the console");
+		System.err.println("  -c, --compare <file>   Compare with a baseline report, regressions fail the run");
+		System.err.println("  -r, --threshold <pct>  Change counted as a regression (default: " + (int) (DEFAULT_THRESHOLD * 100) + ")");
+		System.err.println("  -w, --warmup <n>       Untimed passes over the corpus first (default: 1)");
+	}
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jetbrains.java.decompiler.main.Fernflower;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger.Severity;
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+
+import com.marcomoesman.verdant.Verdant;
+import com.marcomoesman.verdant.fernflower.DecompileWatchdog;
+import com.marcomoesman.verdant.fernflower.StreamingBridge;
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.metrics.DecompileMetrics;
+
+public class CommandLineInterface {
+
+	public static final int EXIT_SUCCESS = 0;
+	public static final int EXIT_FAILURE = 1;
+	public static final int EXIT_USAGE = 2;
+
+	private final List<File> inputs = new ArrayList<File>();
+	private final Map<File, File> outputs = new HashMap<File, File>();
+	private File output = new File(".");
+	private boolean sourceJar = false;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private Severity severity = Severity.WARN;
+	private int methodBudget = DecompileWatchdog.DEFAULT_METHOD_BUDGET;
+	private DecompileWatchdog watchdog = null;
+	private File metrics = null;
+
+	public int run(String[] args) {
+		if (args.length > 0 && args[0].equals("benchmark"))
+			return new BenchmarkRunner().run(Arrays.copyOfRange(args, 1, args.length));
+		if (!this.parseArguments(args)) {
+			this.printUsage();
+			return EXIT_USAGE;
+		}
+
+		Log.setLevel(this.severity);
+		this.assignOutputs();
+		long start = System.currentTimeMillis();
+		this.watchdog = new DecompileWatchdog(DecompileWatchdog.DEFAULT_CLASS_BUDGET, this.methodBudget);
+		final AtomicInteger classes = new AtomicInteger();
+		final AtomicInteger resources = new AtomicInteger();
+		final AtomicInteger rejected = new AtomicInteger();
+		int failed = 0;
+
+		// Every archive is decompiled on its own thread with its own Fernflower context
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(this.threads, this.inputs.size())));
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (final File input : this.inputs) {
+				futures.add(executor.submit(new Runnable() {
+					public void run() {
+						StreamingBridge bridge = CommandLineInterface.this.decompile(input);
+						classes.addAndGet(bridge.getClasses());
+						resources.addAndGet(bridge.getResources());
+						rejected.addAndGet(bridge.getRejected());
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					futures.get(i).get();
+				} catch (ExecutionException exception) {
+					failed++;
+					System.err.println("Failed to decompile " + this.inputs.get(i) + ": " + exception.getCause());
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+					return EXIT_FAILURE;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		System.out.println(String.format("Decompiled %d classes and copied %d resources from %d archives in %d ms, %d failed",
+				classes.get(), resources.get(), this.inputs.size() - failed, System.currentTimeMillis() - start, failed));
+		if (rejected.get() > 0)
+			System.err.println("Skipped " + rejected.get() + " entries whose names point outside of the output");
+		if (!this.watchdog.getTimeouts().isEmpty())
+			System.err.println(this.watchdog.getReport());
+		if (this.metrics != null) {
+			try {
+				Files.write(this.metrics.toPath(), DecompileMetrics.getInstance().getSnapshot().getBytes(StandardCharsets.UTF_8));
+			} catch (IOException exception) {
+				System.err.println("Failed to write metrics to " + this.metrics + ": " + exception);
+				return EXIT_FAILURE;
+			}
+		}
+		return failed == 0 && rejected.get() == 0 ? EXIT_SUCCESS : EXIT_FAILURE;
+	}
+
+	private StreamingBridge decompile(File input) {
+		StreamingBridge bridge = new StreamingBridge(this.outputs.get(input), this.sourceJar);
+		// Fernflower applies its log level option to the logger
+		bridge.getOptions().put(IFernflowerPreferences.LOG_LEVEL, this.severity.name());
+		// Whole archives are one context, so only the method budget applies here
+		this.watchdog.apply(bridge.getOptions());
+		bridge.setWatchdog(this.watchdog);
+		Fernflower fernflower = new Fernflower(bridge, bridge, bridge.getOptions(), bridge);
+		long start = System.nanoTime();
+		try {
+			fernflower.addSource(input);
+			fernflower.decompileContext();
+			DecompileMetrics.getInstance().contextFinished(System.nanoTime() - start);
+		} finally {
+			fernflower.clearContext();
+			bridge.flushMessages();
+			bridge.close();
+			bridge.getArchiveManager().close();
+		}
+		return bridge;
+	}
+
+	private void assignOutputs() {
+		// Inputs with the same base name, such as a/lib.jar and b/lib.jar or x.jar and x.zip,
+		// would write into the same output at the same time, so later ones are numbered
+		Set<String> taken = new HashSet<String>();
+		for (File input : this.inputs) {
+			String name = input.getName();
+			int extension = name.lastIndexOf('.');
+			if (extension > 0)
+				name = name.substring(0, extension);
+			String unique = name;
+			for (int i = 2; !taken.add(unique.toLowerCase()); i++)
+				unique = name + "-" + i;
+			if (!unique.equals(name))
+				System.err.println("Writing " + input + " as " + unique + ", its name is already used by another input");
+			this.outputs.put(input, this.sourceJar ? new File(this.output, unique + "-sources.jar") : new File(this.output, unique));
+		}
+	}
+
+	private boolean parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-o") || arg.equals("--output")) {
+				if (++i >= args.length)
+					return false;
+				this.output = new File(args[i]);
+			} else if (arg.equals("-j") || arg.equals("--jar")) {
+				this.sourceJar = true;
+			} else if (arg.equals("-t") || arg.equals("--threads")) {
+				if (++i >= args.length)
+					return false;
+				try {
+					this.threads = Integer.parseInt(args[i]);
+				} catch (NumberFormatException exception) {
+					return false;
+				}
+			} else if (arg.equals("-b") || arg.equals("--budget")) {
+				if (++i >= args.length)
+					return false;
+				try {
+					this.methodBudget = Integer.parseInt(args[i]);
+				} catch (NumberFormatException exception) {
+					return false;
+				}
+			} else if (arg.equals("-m") || arg.equals("--metrics")) {
+				if (++i >= args.length)
+					return false;
+				this.metrics = new File(args[i]);
+			} else if (arg.equals("-v") || arg.equals("--verbose")) {
+				this.severity = Severity.INFO;
+			} else if (arg.startsWith("-")) {
+				return false;
+			} else {
+				File input = new File(arg);
+				if (!input.isFile()) {
+					System.err.println("Not a file: " + arg);
+					return false;
+				}
+				// The same file given twice is decompiled once
+				if (!this.inputs.contains(input))
+					this.inputs.add(input);
+			}
+		}
+		return !this.inputs.isEmpty();
+	}
+
+	private void printUsage() {
+		System.err.println("Verdant " + Verdant.getVersion());
+		System.err.println("Usage: verdant [options] <archive or class file>...");
+		System.err.println("       verdant benchmark [options] <archive or directory>...");
+		System.err.println("  -o, --output <dir>   Output directory (default: current directory)");
+		System.err.println("  -j, --jar            Write a <name>-sources.jar instead of a directory");
+		System.err.println("  -t, --threads <n>    Archives decompiled at the same time");
+		System.err.println("  -b, --budget <s>     Seconds a single method may take (default: " + DecompileWatchdog.DEFAULT_METHOD_BUDGET + ")");
+		System.err.println("  -m, --metrics <file> Write decompile metrics as JSON");
+		System.err.println("  -v, --verbose        Log Fernflower info messages");
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.util.ArchiveManager;
+import com.marcomoesman.verdant.util.ClassStructure;
+
+public class ClassStructureCache {
+
+	private final File directory;
+	// Structure archives by source archive and its size and modification time
+	private final Map<String, File> structures;
+
+	public ClassStructureCache(File directory) {
+		this.directory = directory;
+		this.structures = new ConcurrentHashMap<String, File>();
+	}
+
+	public File getStructure(File archive, ArchiveManager archiveManager) throws IOException {
+		String key = createKey(archive);
+		File structure = this.structures.get(key);
+		if (structure != null)
+			return structure;
+
+		synchronized (this) {
+			structure = this.structures.get(key);
+			if (structure != null)
+				return structure;
+			
+			// Fernflower only reads libraries from archives, so the structures are kept as one.
+			// The name starts with the path, so older builds of the same archive can be found
+			String pathKey = hash(archive.getAbsolutePath());
+			structure = new File(this.directory, pathKey + "-" + key + ".jar");
+			if (!structure.isFile()) {
+				this.write(archive, archiveManager, structure);
+				this.deleteSuperseded(pathKey, structure);
+			}
+			this.structures.put(key, structure);
+			return structure;
+		}
+	}
+
+	private void write(File archive, ArchiveManager archiveManager, File structure) throws IOException {
+		if (!this.directory.isDirectory() && !this.directory.mkdirs())
+			throw new IOException("Could not create " + this.directory);
+		
+		long start = System.currentTimeMillis();
+		int classes = 0;
+		File temporary = new File(this.directory, structure.getName() + ".tmp");
+		JarFile jarFile = archiveManager.getArchive(archive);
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(temporary))) {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				JarEntry entry = entries.nextElement();
+				if (entry.isDirectory() || !entry.getName().endsWith(".class"))
+					continue;
+				
+				byte[] bytes = archiveManager.readEntry(jarFile, entry);
+				try {
+					bytes = ClassStructure.strip(bytes);
+				} catch (IOException | RuntimeException exception) {
+					// Classes which can not be parsed are kept in full
+				}
+				out.putNextEntry(new JarEntry(entry.getName()));
+				out.write(bytes);
+				out.closeEntry();
+				classes++;
+			}
+		} catch (IOException exception) {
+			temporary.delete();
+			throw exception;
+		}
+		if (!temporary.renameTo(structure)) {
+			temporary.delete();
+			throw new IOException("Could not write " + structure);
+		}
+		Log.info("Class structures: " + classes + " classes of " + archive.getName() + " in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	private void deleteSuperseded(String pathKey, File structure) {
+		File[] files = this.directory.listFiles();
+		if (files == null)
+			return;
+		for (File file : files) {
+			if (!file.getName().startsWith(pathKey + "-") || file.equals(structure))
+				continue;
+			// A structure which is still opened by another archive is removed the next time
+			this.structures.values().remove(file);
+			if (!file.delete())
+				Log.trace("Could not delete " + file);
+		}
+	}
+
+	static String createKey(File archive) {
+		return hash(archive.getAbsolutePath() + ":" + archive.length() + ":" + archive.lastModified());
+	}
+
+	private static String hash(String identity) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest(identity.getBytes(StandardCharsets.UTF_8));
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < 12; i++)
+				builder.append(String.format("%02x", hash[i]));
+			return builder.toString();
+		} catch (NoSuchAlgorithmException exception) {
+			throw new IllegalStateException(exception);
+		}
+	}
+
+	public File getDirectory() {
+		return this.directory;
+	}
+
+}
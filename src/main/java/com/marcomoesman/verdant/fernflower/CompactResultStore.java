@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.marcomoesman.verdant.log.Log;
+
+public class CompactResultStore implements ResultStore {
+
+	// Sources smaller than this are not worth deflating
+	private static final int COMPRESS_THRESHOLD = 512;
+	// The spill file is rewritten once this many bytes of it belong to replaced entries
+	private static final long COMPACT_THRESHOLD = 16 * 1024 * 1024;
+
+	private final long memoryBudget;
+	private final boolean compress;
+	private final boolean spill;
+	private final long compactThreshold;
+	// Entries in least recently used order
+	private final LinkedHashMap<String, Entry> entries;
+
+	private long memoryUsed = 0;
+	private File spillFile = null;
+	private RandomAccessFile spillAccess = null;
+	private long spillDead = 0;
+
+	public CompactResultStore(long memoryBudget, boolean compress, boolean spill) {
+		this(memoryBudget, compress, spill, COMPACT_THRESHOLD);
+	}
+
+	CompactResultStore(long memoryBudget, boolean compress, boolean spill, long compactThreshold) {
+		this.memoryBudget = memoryBudget;
+		this.compress = compress;
+		this.spill = spill;
+		this.compactThreshold = compactThreshold;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75F, true);
+	}
+
+	@Override
+	public void put(String entryName, String content) {
+		Entry entry = new Entry();
+		if (content == null) {
+			// Classes Fernflower failed on are stored without a source, as the other stores do
+			entry.length = -1;
+			entry.data = new byte[0];
+		} else {
+			// Deflated before locking, the workers store their results concurrently
+			byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+			entry.length = bytes.length;
+			entry.data = bytes;
+			if (this.compress && bytes.length >= COMPRESS_THRESHOLD) {
+				byte[] deflated = deflate(bytes);
+				if (deflated.length < bytes.length) {
+					entry.data = deflated;
+					entry.compressed = true;
+				}
+			}
+		}
+
+		synchronized (this) {
+			Entry previous = this.entries.put(entryName, entry);
+			if (previous != null)
+				this.release(previous);
+			this.memoryUsed += entry.data.length;
+			this.evict();
+			this.compactSpill();
+		}
+	}
+
+	@Override
+	public FFDecompiledClass get(String entryName) {
+		byte[] data;
+		int length;
+		boolean compressed;
+		synchronized (this) {
+			Entry entry = this.entries.get(entryName);
+			if (entry == null)
+				return null;
+
+			if (entry.data == null) {
+				// Bring spilled entries back into memory
+				try {
+					entry.data = this.readSpill(entry);
+				} catch (IOException exception) {
+					Log.error("Could not read spilled source of " + entryName, exception);
+					this.entries.remove(entryName);
+					return null;
+				}
+				this.memoryUsed += entry.data.length;
+			}
+			data = entry.data;
+			length = entry.length;
+			compressed = entry.compressed;
+			this.evict();
+		}
+
+		if (length < 0)
+			return new FFDecompiledClass(entryName, null);
+		byte[] bytes = compressed ? inflate(data, length) : data;
+		return new FFDecompiledClass(entryName, new String(bytes, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public synchronized boolean contains(String entryName) {
+		return this.entries.containsKey(entryName);
+	}
+
+	@Override
+	public synchronized Collection<String> getEntryNames() {
+		return new ArrayList<String>(this.entries.keySet());
+	}
+
+	@Override
+	public synchronized void clear() {
+		this.entries.clear();
+		this.memoryUsed = 0;
+		if (this.spillAccess != null) {
+			try {
+				this.spillAccess.close();
+			} catch (IOException exception) {
+				Log.error("Could not close the spill file", exception);
+			}
+			this.spillFile.delete();
+			this.spillAccess = null;
+			this.spillFile = null;
+		}
+		this.spillDead = 0;
+	}
+
+	public synchronized long getMemoryUsed() {
+		return this.memoryUsed;
+	}
+
+	public long getMemoryBudget() {
+		return this.memoryBudget;
+	}
+
+	synchronized long getSpillLength() throws IOException {
+		return this.spillAccess != null ? this.spillAccess.length() : 0;
+	}
+
+	private void evict() {
+		Iterator<Entry> iterator = this.entries.values().iterator();
+		while (this.memoryUsed > this.memoryBudget && iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.data == null || entry.data.length == 0)
+				continue;
+
+			this.memoryUsed -= entry.data.length;
+			if (this.spill && this.writeSpill(entry)) {
+				entry.data = null;
+			} else {
+				// Dropped entries are decompiled again when they are requested
+				iterator.remove();
+			}
+		}
+	}
+
+	private void release(Entry entry) {
+		if (entry.data != null)
+			this.memoryUsed -= entry.data.length;
+		// The spilled copy stays in the file until it is compacted
+		if (entry.spillOffset >= 0)
+			this.spillDead += entry.spillLength;
+	}
+
+	private void compactSpill() {
+		if (this.spillAccess == null || this.spillDead < this.compactThreshold)
+			return;
+
+		File compacted = null;
+		RandomAccessFile compactedAccess = null;
+		try {
+			if (this.spillDead * 2 < this.spillAccess.length())
+				return;
+			compacted = File.createTempFile("verdant", ".spill");
+			compacted.deleteOnExit();
+			compactedAccess = new RandomAccessFile(compacted, "rw");
+			// Offsets are only updated once every live entry was copied
+			long[] offsets = new long[this.entries.size()];
+			int index = 0;
+			for (Entry entry : this.entries.values()) {
+				offsets[index++] = entry.spillOffset < 0 ? -1 : compactedAccess.getFilePointer();
+				if (entry.spillOffset >= 0)
+					compactedAccess.write(this.readSpill(entry));
+			}
+			index = 0;
+			for (Entry entry : this.entries.values())
+				entry.spillOffset = offsets[index++];
+		} catch (IOException exception) {
+			Log.error("Could not compact the spill file", exception);
+			if (compactedAccess != null) {
+				try {
+					compactedAccess.close();
+				} catch (IOException closeException) {
+					Log.error("Could not close the spill file", closeException);
+				}
+			}
+			if (compacted != null)
+				compacted.delete();
+			return;
+		}
+
+		try {
+			this.spillAccess.close();
+		} catch (IOException exception) {
+			Log.error("Could not close the spill file", exception);
+		}
+		this.spillFile.delete();
+		this.spillFile = compacted;
+		this.spillAccess = compactedAccess;
+		this.spillDead = 0;
+	}
+
+	private boolean writeSpill(Entry entry) {
+		// Entries never change, so a spilled copy can be reused when evicted again
+		if (entry.spillOffset >= 0)
+			return true;
+
+		try {
+			if (this.spillAccess == null) {
+				this.spillFile = File.createTempFile("verdant", ".spill");
+				this.spillFile.deleteOnExit();
+				this.spillAccess = new RandomAccessFile(this.spillFile, "rw");
+			}
+			long offset = this.spillAccess.length();
+			this.spillAccess.seek(offset);
+			this.spillAccess.write(entry.data);
+			entry.spillOffset = offset;
+			entry.spillLength = entry.data.length;
+			return true;
+		} catch (IOException exception) {
+			Log.error("Could not spill decompiled source", exception);
+			return false;
+		}
+	}
+
+	private byte[] readSpill(Entry entry) throws IOException {
+		if (this.spillAccess == null || entry.spillOffset < 0)
+			throw new IOException("Entry was not spilled");
+		byte[] data = new byte[entry.spillLength];
+		this.spillAccess.seek(entry.spillOffset);
+		this.spillAccess.readFully(data);
+		return data;
+	}
+
+	private static byte[] deflate(byte[] bytes) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 4);
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				int count = deflater.deflate(buffer);
+				output.write(buffer, 0, count);
+			}
+			return output.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(byte[] data, int length) {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			byte[] bytes = new byte[length];
+			int offset = 0;
+			while (offset < length && !inflater.finished()) {
+				int count = inflater.inflate(bytes, offset, length - offset);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					throw new DataFormatException("Truncated entry");
+				offset += count;
+			}
+			return bytes;
+		} catch (DataFormatException exception) {
+			throw new IllegalStateException(exception);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static class Entry {
+
+		private byte[] data;
+		private int length;
+		private boolean compressed = false;
+		private long spillOffset = -1;
+		private int spillLength = 0;
+
+	}
+
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jetbrains.java.decompiler.main.Fernflower;
+
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.metrics.DecompileMetrics;
+
+public class DecompileCache {
+
+	private static final String EXTENSION = ".java.gz";
+
+	private final File directory;
+	private final long maxSize;
+	// Cache keys in least recently used order, mapped to their file size
+	private final LinkedHashMap<String, Long> entries;
+	private final String versionHash;
+
+	private long size = 0;
+	private boolean loaded = false;
+
+	public DecompileCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<String, Long>(16, 0.75F, true);
+		this.versionHash = this.hash(getFernflowerVersion().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void load() {
+		// Scanned on first use rather than on startup
+		if (this.loaded)
+			return;
+		this.loaded = true;
+		
+		File[] files = this.directory.listFiles();
+		if (files == null)
+			return;
+
+		// Last modified is the last access, so the LRU order survives restarts
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File o1, File o2) {
+				return Long.compare(o1.lastModified(), o2.lastModified());
+			}
+		});
+		for (File file : files) {
+			String name = file.getName();
+			if (!name.endsWith(EXTENSION))
+				continue;
+			this.entries.put(name.substring(0, name.length() - EXTENSION.length()), file.length());
+			this.size += file.length();
+		}
+	}
+
+	public String createKey(Map<String, Object> options, List<byte[]> classBytes) {
+		MessageDigest digest = createDigest();
+		digest.update(this.versionHash.getBytes(StandardCharsets.UTF_8));
+		digest.update(new TreeMap<String, Object>(options).toString().getBytes(StandardCharsets.UTF_8));
+		for (byte[] bytes : classBytes) {
+			digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+			digest.update(bytes);
+		}
+		return toHex(digest.digest());
+	}
+
+	public String get(String key) {
+		synchronized (this) {
+			this.load();
+			// Touched here so the entry moves to the end of the LRU order
+			if (this.entries.get(key) == null) {
+				DecompileMetrics.getInstance().cacheMiss();
+				return null;
+			}
+		}
+
+		// Only the bookkeeping is locked, other threads can read and write entries meanwhile
+		File file = this.getFile(key);
+		try (InputStream stream = new GZIPInputStream(new FileInputStream(file))) {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = stream.read(buffer)) != -1)
+				content.write(buffer, 0, count);
+			file.setLastModified(System.currentTimeMillis());
+			DecompileMetrics.getInstance().cacheHit();
+			return new String(content.toByteArray(), StandardCharsets.UTF_8);
+		} catch (IOException exception) {
+			// Treat unreadable or concurrently evicted entries as missing
+			DecompileMetrics.getInstance().cacheMiss();
+			synchronized (this) {
+				this.remove(key);
+			}
+			return null;
+		}
+	}
+
+	public void put(String key, String content) {
+		// Classes Fernflower failed on have no content, they are tried again next time
+		if (content == null)
+			return;
+		synchronized (this) {
+			this.load();
+			if (this.entries.containsKey(key))
+				return;
+		}
+
+		if (!this.directory.isDirectory() && !this.directory.mkdirs())
+			return;
+
+		File file = this.getFile(key);
+		File temporary;
+		try {
+			// Two threads can write the same key, each writes its own temporary file
+			temporary = File.createTempFile(key, ".tmp", this.directory);
+		} catch (IOException exception) {
+			Log.error("Could not write cache entry " + key, exception);
+			return;
+		}
+		try (OutputStream stream = new GZIPOutputStream(new FileOutputStream(temporary))) {
+			stream.write(content.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException exception) {
+			Log.error("Could not write cache entry " + key, exception);
+			temporary.delete();
+			return;
+		}
+		long length = temporary.length();
+		// Keys are content hashes, so a concurrent write of the same key left the same content
+		if (!temporary.renameTo(file) && !file.isFile()) {
+			temporary.delete();
+			return;
+		}
+		temporary.delete();
+
+		List<File> evicted;
+		synchronized (this) {
+			if (this.entries.containsKey(key))
+				return;
+			this.entries.put(key, length);
+			this.size += length;
+			evicted = this.evict();
+		}
+		for (File evictedFile : evicted)
+			evictedFile.delete();
+	}
+
+	private List<File> evict() {
+		List<File> evicted = new ArrayList<File>();
+		Iterator<Map.Entry<String, Long>> iterator = this.entries.entrySet().iterator();
+		while (this.size > this.maxSize && iterator.hasNext()) {
+			Map.Entry<String, Long> entry = iterator.next();
+			iterator.remove();
+			this.size -= entry.getValue();
+			evicted.add(this.getFile(entry.getKey()));
+		}
+		return evicted;
+	}
+
+	private void remove(String key) {
+		Long length = this.entries.remove(key);
+		if (length != null)
+			this.size -= length;
+		this.getFile(key).delete();
+	}
+
+	private File getFile(String key) {
+		return new File(this.directory, key + EXTENSION);
+	}
+
+	public synchronized long getSize() {
+		this.load();
+		return this.size;
+	}
+
+	public long getMaxSize() {
+		return this.maxSize;
+	}
+
+	private String hash(byte[] bytes) {
+		return toHex(createDigest().digest(bytes));
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException exception) {
+			throw new IllegalStateException(exception);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return builder.toString();
+	}
+
+	private static String getFernflowerVersion() {
+		// Snapshot builds carry no version, so fall back to the identity of the jar
+		String version = Fernflower.class.getPackage() == null ? null : Fernflower.class.getPackage().getImplementationVersion();
+		if (version != null)
+			return version;
+		try {
+			File jar = new File(Fernflower.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			return jar.getName() + ":" + jar.length() + ":" + jar.lastModified();
+		} catch (Exception exception) {
+			return "unknown";
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DecompileProgress {
+
+	private final AtomicInteger done;
+	private final long startTime;
+	
+	private volatile int total = 0;
+	private volatile boolean cancelled = false;
+	private volatile boolean finished = false;
+
+	public DecompileProgress() {
+		this.done = new AtomicInteger();
+		this.startTime = System.nanoTime();
+	}
+
+	public void classDecompiled(String entryName) {
+		this.checkCancelled();
+		this.done.incrementAndGet();
+	}
+
+	public void checkCancelled() {
+		if (this.cancelled)
+			throw new CancellationException("Decompilation cancelled");
+	}
+
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	public void finish() {
+		this.finished = true;
+	}
+
+	public boolean isFinished() {
+		return this.finished;
+	}
+
+	public void setTotal(int total) {
+		this.total = total;
+	}
+
+	public int getTotal() {
+		return this.total;
+	}
+
+	public int getDone() {
+		return this.done.get();
+	}
+
+	public long getElapsedMillis() {
+		return (System.nanoTime() - this.startTime) / 1000000L;
+	}
+
+	public double getClassesPerSecond() {
+		long elapsed = this.getElapsedMillis();
+		if (elapsed <= 0)
+			return 0;
+		return this.getDone() * 1000D / elapsed;
+	}
+
+	public long getRemainingMillis() {
+		double classesPerSecond = this.getClassesPerSecond();
+		int remaining = this.total - this.getDone();
+		if (classesPerSecond <= 0 || remaining <= 0)
+			return -1;
+		return (long) (remaining * 1000D / classesPerSecond);
+	}
+
+}
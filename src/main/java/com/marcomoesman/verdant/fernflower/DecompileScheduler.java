@@ -0,0 +1,416 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger.Severity;
+
+import com.marcomoesman.verdant.metrics.DecompileMetrics;
+import com.marcomoesman.verdant.util.ArchiveManager;
+import com.marcomoesman.verdant.util.ConstantPoolReader;
+import com.marcomoesman.verdant.util.JarEntryUtility;
+
+public class DecompileScheduler {
+
+	// Queued lanes, opened classes are not queued but decompiled on the thread that requests them
+	public static final int PREFETCH = 1;
+	public static final int BULK = 2;
+
+	private static final int PREFETCH_BATCH = 16;
+	private static final int PREFETCH_LIMIT = 64;
+
+	private final File archive;
+	private final FernflowerBridge fernflowerBridge;
+	private final LazyDecompiler lazyDecompiler;
+	private final int threads;
+	private final Map<String, List<String>> packages;
+	private final PriorityBlockingQueue<Task> queue;
+	private final Set<String> claimed;
+	private final Set<String> bulkPending;
+	private final AtomicLong sequence;
+	private final IntSupplier queueDepth;
+	private DecompileProgress progress = null;
+	private ExecutorService workers = null;
+	private volatile int bulkBatchSize = 1;
+	private volatile boolean shutdown = false;
+
+	public DecompileScheduler(File archive, FernflowerBridge fernflowerBridge, LazyDecompiler lazyDecompiler) throws IOException {
+		this(archive, fernflowerBridge, lazyDecompiler, Runtime.getRuntime().availableProcessors());
+	}
+
+	public DecompileScheduler(File archive, FernflowerBridge fernflowerBridge, LazyDecompiler lazyDecompiler, int threads) throws IOException {
+		this.archive = archive;
+		this.fernflowerBridge = fernflowerBridge;
+		this.lazyDecompiler = lazyDecompiler;
+		this.threads = Math.max(1, threads);
+		this.queue = new PriorityBlockingQueue<Task>();
+		this.claimed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		this.bulkPending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		this.sequence = new AtomicLong();
+		this.queueDepth = () -> this.queue.size();
+		DecompileMetrics.getInstance().setQueueDepth(this.queueDepth);
+		
+		// Top level classes by package, used to prefetch the siblings of an opened class
+		this.packages = new HashMap<String, List<String>>();
+		for (String entryName : fernflowerBridge.getArchiveManager().getEntryIndex(archive).getEntriesWithoutInnerClasses()) {
+			if (!entryName.endsWith(".class"))
+				continue;
+			String packageName = entryName.substring(0, entryName.lastIndexOf('/') + 1);
+			List<String> classes = this.packages.get(packageName);
+			if (classes == null) {
+				classes = new ArrayList<String>();
+				this.packages.put(packageName, classes);
+			}
+			classes.add(entryName);
+		}
+	}
+
+	public void decompile(DecompileProgress progress) throws IOException, InterruptedException {
+		this.progress = progress;
+		List<Shard> shards = this.createShards();
+		if (shards.isEmpty())
+			return;
+		
+		// Each batch pays for loading the archive as context, but smaller batches let
+		// interactive and prefetch work get a worker sooner
+		this.bulkBatchSize = Math.max(8, shards.size() / (this.threads * 4));
+		for (Shard shard : shards)
+			this.bulkPending.add(shard.getSourceName());
+		for (Shard shard : shards)
+			this.queue.add(new Task(BULK, this.sequence.getAndIncrement(), shard));
+		this.start();
+		
+		synchronized (this.bulkPending) {
+			while (!this.bulkPending.isEmpty() && !this.shutdown) {
+				progress.checkCancelled();
+				this.bulkPending.wait(250);
+			}
+		}
+		progress.checkCancelled();
+	}
+
+	public FFDecompiledClass request(String entryName) {
+		// Runs on the calling thread, so an opened class never waits behind queued work
+		FFDecompiledClass decompiledClass = this.lazyDecompiler.decompile(entryName);
+		this.completed(getSourceName(entryName));
+		// Classes of nested archives have no package index to prefetch from
+		if (!this.shutdown && !entryName.contains(ArchiveManager.NESTED_SEPARATOR))
+			this.prefetch(entryName);
+		return decompiledClass;
+	}
+
+	public void prefetch(String entryName) {
+		Set<String> related = new LinkedHashSet<String>();
+		try {
+			// Classes referenced from the constant pool first, then the rest of the package
+			byte[] bytecode = this.fernflowerBridge.getBytecode(this.archive.getAbsolutePath(), entryName);
+			for (String className : new ConstantPoolReader(bytecode).getClassNames()) {
+				if (className.startsWith("["))
+					continue;
+				String reference = JarEntryUtility.getOuterClassName(className + ".class");
+				if (this.packages.containsKey(reference.substring(0, reference.lastIndexOf('/') + 1)))
+					related.add(reference);
+			}
+		} catch (IOException exception) {
+			this.fernflowerBridge.writeMessage("Could not read references of " + entryName, Severity.WARN, exception);
+		}
+		List<String> siblings = this.packages.get(entryName.substring(0, entryName.lastIndexOf('/') + 1));
+		if (siblings != null)
+			related.addAll(siblings);
+		related.remove(entryName);
+		
+		int count = 0;
+		JarFile jarFile;
+		try {
+			jarFile = this.fernflowerBridge.getArchiveManager().getArchive(this.archive);
+		} catch (IOException exception) {
+			return;
+		}
+		for (String relatedEntry : related) {
+			if (count >= PREFETCH_LIMIT)
+				break;
+			String sourceName = getSourceName(relatedEntry);
+			if (this.claimed.contains(sourceName) || this.fernflowerBridge.getResultStore().contains(sourceName))
+				continue;
+			JarEntry entry = jarFile.getJarEntry(relatedEntry);
+			if (entry == null)
+				continue;
+			this.queue.add(new Task(PREFETCH, this.sequence.getAndIncrement(), this.createShard(jarFile, entry)));
+			count++;
+		}
+		if (count > 0)
+			this.start();
+	}
+
+	public void shutdown() {
+		this.shutdown = true;
+		this.queue.clear();
+		DecompileMetrics.getInstance().clearQueueDepth(this.queueDepth);
+		synchronized (this) {
+			if (this.workers != null)
+				this.workers.shutdownNow();
+		}
+		synchronized (this.bulkPending) {
+			this.bulkPending.notifyAll();
+		}
+	}
+
+	private synchronized void start() {
+		if (this.workers != null || this.shutdown)
+			return;
+		this.workers = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				// Idle workers wait for prefetches, they should not keep the application alive
+				Thread thread = new Thread(runnable, "Decompile Worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (int i = 0; i < this.threads; i++) {
+			this.workers.submit(new Runnable() {
+				public void run() {
+					DecompileScheduler.this.work();
+				}
+			});
+		}
+	}
+
+	private void work() {
+		while (!this.shutdown) {
+			List<Shard> batch = new ArrayList<Shard>();
+			int lane;
+			try {
+				lane = this.takeBatch(batch);
+			} catch (InterruptedException exception) {
+				return;
+			}
+			if (batch.isEmpty())
+				continue;
+			
+			try {
+				this.decompileBatch(batch, lane);
+			} catch (CancellationException exception) {
+				// The bulk job was cancelled, prefetched and interactive work goes on
+				this.queue.removeIf(task -> task.lane == BULK);
+			} catch (Exception exception) {
+				this.fernflowerBridge.writeMessage("Decompile worker failed", Severity.ERROR, exception);
+			} finally {
+				for (Shard shard : batch)
+					this.completed(shard.getSourceName());
+			}
+		}
+	}
+
+	private int takeBatch(List<Shard> batch) throws InterruptedException {
+		Task first = this.queue.poll(1, TimeUnit.SECONDS);
+		if (first == null)
+			return BULK;
+		
+		// Only tasks of the same lane share a batch, so a prefetch never waits on bulk work
+		int limit = first.lane == PREFETCH ? PREFETCH_BATCH : this.bulkBatchSize;
+		Task task = first;
+		while (task != null) {
+			if (this.claim(task))
+				batch.add(task.shard);
+			if (batch.size() >= limit)
+				break;
+			task = this.queue.peek();
+			if (task == null || task.lane != first.lane || !this.queue.remove(task))
+				break;
+		}
+		return first.lane;
+	}
+
+	private boolean claim(Task task) {
+		String sourceName = task.shard.getSourceName();
+		if (task.lane == BULK && this.progress != null) {
+			if (this.progress.isCancelled())
+				return false;
+			if (this.claimed.contains(sourceName) || this.fernflowerBridge.getResultStore().contains(sourceName)) {
+				// Already opened or prefetched, which did not count towards the bulk progress
+				this.progress.classDecompiled(sourceName);
+				return false;
+			}
+		}
+		if (this.fernflowerBridge.getResultStore().contains(sourceName))
+			return false;
+		return this.claimed.add(sourceName);
+	}
+
+	private void completed(String sourceName) {
+		if (this.bulkPending.remove(sourceName) && this.bulkPending.isEmpty()) {
+			synchronized (this.bulkPending) {
+				this.bulkPending.notifyAll();
+			}
+		}
+	}
+
+	private void decompileBatch(List<Shard> batch, int lane) throws IOException {
+		// Every worker has its own bridge and Fernflower context
+		FernflowerBridge workerBridge = new FernflowerBridge();
+		workerBridge.getOptions().putAll(this.fernflowerBridge.getOptions());
+		if (lane == BULK)
+			workerBridge.setProgress(this.progress);
+		workerBridge.setCache(this.fernflowerBridge.getCache());
+		workerBridge.setArchiveManager(this.fernflowerBridge.getArchiveManager());
+		workerBridge.setBytecodeProvider(this.fernflowerBridge.getBytecodeProvider());
+		workerBridge.setArchiveContext(this.fernflowerBridge.getArchiveContext());
+		workerBridge.setLibraries(this.fernflowerBridge.getLibraries());
+		workerBridge.setWatchdog(this.fernflowerBridge.getWatchdog());
+		
+		List<String> entryNames = new ArrayList<String>();
+		for (Shard shard : batch) {
+			// Hashed here rather than while the shards are created, so the first batches start right away
+			if (this.loadCached(shard)) {
+				if (lane == BULK && this.progress != null)
+					this.progress.classDecompiled(shard.getSourceName());
+				continue;
+			}
+			entryNames.addAll(shard.entryNames);
+			workerBridge.registerCacheKey(shard.getSourceName(), shard.cacheKey);
+		}
+		try {
+			if (!entryNames.isEmpty())
+				workerBridge.decompileEntries(this.archive, entryNames);
+			this.fernflowerBridge.addDecompiledClasses(workerBridge);
+		} finally {
+			workerBridge.cleanup();
+		}
+	}
+
+	private boolean loadCached(Shard shard) throws IOException {
+		if (this.fernflowerBridge.getCache() == null)
+			return false;
+		List<byte[]> classBytes = new ArrayList<byte[]>();
+		for (String shardEntry : shard.entryNames)
+			classBytes.add(this.fernflowerBridge.getBytecode(this.archive.getAbsolutePath(), shardEntry));
+		shard.cacheKey = this.fernflowerBridge.getCacheKey(this.archive, shard.entryNames, classBytes);
+		return this.fernflowerBridge.loadCachedClass(shard.getSourceName(), shard.cacheKey);
+	}
+
+	private List<Shard> createShards() throws IOException {
+		List<Shard> shards = new ArrayList<Shard>();
+		int total = 0;
+		JarFile jarFile = this.fernflowerBridge.getArchiveManager().getArchive(this.archive);
+		for (List<String> classes : this.packages.values()) {
+			for (String entryName : classes) {
+				Shard shard = this.createShard(jarFile, jarFile.getJarEntry(entryName));
+				total++;
+				
+				// Results kept from a previous build of this archive, the disk cache is probed by the workers
+				if (this.fernflowerBridge.getResultStore().contains(shard.getSourceName())) {
+					this.progress.classDecompiled(shard.getSourceName());
+					continue;
+				}
+				shards.add(shard);
+			}
+		}
+		this.progress.setTotal(total);
+		
+		// Largest first, so the batches finish at about the same time
+		Collections.sort(shards, new Comparator<Shard>() {
+			public int compare(Shard o1, Shard o2) {
+				return Long.compare(o2.size, o1.size);
+			}
+		});
+		return shards;
+	}
+
+	private Shard createShard(JarFile jarFile, JarEntry entry) {
+		// A shard is a top level class together with its inner classes
+		Shard shard = new Shard();
+		shard.add(entry);
+		for (String innerClass : this.lazyDecompiler.getInnerClasses(entry.getName()))
+			shard.add(jarFile.getJarEntry(innerClass));
+		return shard;
+	}
+
+	public int getQueueSize() {
+		return this.queue.size();
+	}
+
+	private static String getSourceName(String entryName) {
+		return entryName.substring(0, entryName.length() - 5) + "java";
+	}
+
+	private static class Task implements Comparable<Task> {
+
+		private final int lane;
+		private final long sequence;
+		private final Shard shard;
+
+		private Task(int lane, long sequence, Shard shard) {
+			this.lane = lane;
+			this.sequence = sequence;
+			this.shard = shard;
+		}
+
+		@Override
+		public int compareTo(Task other) {
+			if (this.lane != other.lane)
+				return Integer.compare(this.lane, other.lane);
+			return Long.compare(this.sequence, other.sequence);
+		}
+
+	}
+
+	private static class Shard {
+
+		private final List<String> entryNames = new ArrayList<String>();
+		private long size = 0;
+		private String cacheKey = null;
+
+		private void add(JarEntry entry) {
+			if (entry == null)
+				return;
+			this.entryNames.add(entry.getName());
+			this.size += Math.max(1, entry.getSize());
+		}
+
+		private String getSourceName() {
+			return DecompileScheduler.getSourceName(this.entryNames.get(0));
+		}
+
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+
+public class DecompileWatchdog {
+
+	public static final long DEFAULT_CLASS_BUDGET = 60000L;
+	public static final int DEFAULT_METHOD_BUDGET = 15;
+
+	private final long classBudget;
+	private final int methodBudget;
+	private final List<Timeout> timeouts;
+
+	public DecompileWatchdog() {
+		this(DEFAULT_CLASS_BUDGET, DEFAULT_METHOD_BUDGET);
+	}
+
+	public DecompileWatchdog(long classBudget, int methodBudget) {
+		this.classBudget = classBudget;
+		this.methodBudget = methodBudget;
+		this.timeouts = new CopyOnWriteArrayList<Timeout>();
+	}
+
+	public void apply(Map<String, Object> options) {
+		// Fernflower gives up on a single method itself, the rest of its class is still written
+		options.put(IFernflowerPreferences.MAX_PROCESSING_METHOD, Integer.toString(this.methodBudget));
+	}
+
+	public boolean isExpired(long classStart, long methodStart) {
+		long now = System.currentTimeMillis();
+		if (now - classStart > this.classBudget)
+			return true;
+		// A method Fernflower could not stop counts against its class as well
+		return methodStart != 0 && now - methodStart > this.methodBudget * 2000L;
+	}
+
+	public void classTimedOut(String sourceName, String method, long elapsed) {
+		this.timeouts.add(new Timeout(sourceName, method, elapsed, true));
+	}
+
+	public void methodTimedOut(String sourceName, String method, long elapsed) {
+		if (elapsed >= this.methodBudget * 1000L)
+			this.timeouts.add(new Timeout(sourceName, method, elapsed, false));
+	}
+
+	public List<Timeout> getTimeouts() {
+		List<Timeout> timeouts = new ArrayList<Timeout>(this.timeouts);
+		Collections.sort(timeouts, new Comparator<Timeout>() {
+			public int compare(Timeout o1, Timeout o2) {
+				return Long.compare(o2.elapsed, o1.elapsed);
+			}
+		});
+		return timeouts;
+	}
+
+	public String getReport() {
+		List<Timeout> timeouts = this.getTimeouts();
+		StringBuilder builder = new StringBuilder();
+		builder.append(timeouts.size()).append(" timeouts");
+		for (Timeout timeout : timeouts)
+			builder.append('\n').append(timeout);
+		return builder.toString();
+	}
+
+	public long getClassBudget() {
+		return this.classBudget;
+	}
+
+	public int getMethodBudget() {
+		return this.methodBudget;
+	}
+
+	public static class Timeout {
+
+		private final String sourceName;
+		private final String method;
+		private final long elapsed;
+		private final boolean degraded;
+
+		private Timeout(String sourceName, String method, long elapsed, boolean degraded) {
+			this.sourceName = sourceName;
+			this.method = method;
+			this.elapsed = elapsed;
+			this.degraded = degraded;
+		}
+
+		public String getSourceName() {
+			return this.sourceName;
+		}
+
+		public String getMethod() {
+			return this.method;
+		}
+
+		public long getElapsed() {
+			return this.elapsed;
+		}
+
+		public boolean isDegraded() {
+			// Degraded classes only have a stub, otherwise just the method was left out
+			return this.degraded;
+		}
+
+		@Override
+		public String toString() {
+			return (this.degraded ? "Class " : "Method ") + this.sourceName + (this.method != null ? " " + this.method : "") + " after " + this.elapsed + " ms";
+		}
+
+	}
+
+}
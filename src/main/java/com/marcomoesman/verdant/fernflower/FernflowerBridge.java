@@ -25,22 +25,241 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import org.jetbrains.java.decompiler.main.Fernflower;
 import org.jetbrains.java.decompiler.main.extern.IBytecodeProvider;
 import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger;
 import org.jetbrains.java.decompiler.main.extern.IResultSaver;
 
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.metrics.DecompileMetrics;
+import com.marcomoesman.verdant.search.TrigramIndex;
+import com.marcomoesman.verdant.util.ArchiveManager;
+import com.marcomoesman.verdant.util.ClassStub;
+import com.marcomoesman.verdant.util.ConstantPoolReader;
+import com.marcomoesman.verdant.util.JarEntryUtility;
+
 public class FernflowerBridge extends IFernflowerLogger implements IBytecodeProvider, IResultSaver {
 
-	private final Map<String, FFDecompiledClass> decompiledClasses;
+	private final ResultStore resultStore;
+	private final Map<String, String[]> entrySources;
+	private final Map<String, String> cacheKeys;
+	private final Map<String, List<String>> sourceEntries;
+	private final Map<String, Object> options;
+	private DecompileProgress progress = null;
+	private DecompileCache cache = null;
+	private volatile TrigramIndex searchIndex = null;
+	private ArchiveManager archiveManager;
+	private IBytecodeProvider bytecodeProvider = null;
+	private volatile File archiveContext = null;
+	private volatile List<File> libraries = Collections.emptyList();
+	private DecompileWatchdog watchdog = null;
+	// Activity of the running context, watched against the budgets of the watchdog
+	private final Set<String> contextSaved;
+	private final Set<Thread> abandoned;
+	private volatile long classStart = 0;
+	private volatile long methodStart = 0;
+	private volatile String currentClass = null;
+	private volatile String currentMethod = null;
+	// Processing of the current class, measured from startClass to endClass
+	private volatile String processClass = null;
+	private volatile long processStart = 0;
+	// Fernflower messages below WARN, collected for the class they belong to
+	private final StringBuilder classMessages = new StringBuilder();
+	private int classMessageCount = 0;
+	private Severity classMessageSeverity = Severity.TRACE;
+	private String messageClass = null;
 	
 	public FernflowerBridge() {
-		this.decompiledClasses = new HashMap<String, FFDecompiledClass>();
+		this(new MemoryResultStore(), new ArchiveManager());
+	}
+	
+	public FernflowerBridge(ResultStore resultStore, ArchiveManager archiveManager) {
+		this.resultStore = resultStore;
+		this.archiveManager = archiveManager;
+		this.entrySources = new ConcurrentHashMap<String, String[]>();
+		this.cacheKeys = new ConcurrentHashMap<String, String>();
+		this.sourceEntries = new HashMap<String, List<String>>();
+		this.options = new HashMap<String, Object>();
+		this.contextSaved = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		this.abandoned = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+	}
+	
+	public void decompileEntries(File archive, List<String> entryNames) {
+		if (this.watchdog == null) {
+			this.decompileContext(archive, entryNames);
+			return;
+		}
+		// A class that runs out of time is left out and the others are decompiled again without it
+		List<String> remaining = entryNames;
+		while (remaining != null && !remaining.isEmpty())
+			remaining = this.decompileWatched(archive, remaining);
+	}
+
+	private List<String> decompileWatched(final File archive, final List<String> entryNames) {
+		final Throwable[] failure = new Throwable[1];
+		Thread thread = new Thread("Decompile Context") {
+			public void run() {
+				try {
+					FernflowerBridge.this.decompileContext(archive, entryNames);
+				} catch (Throwable throwable) {
+					failure[0] = throwable;
+				} finally {
+					FernflowerBridge.this.abandoned.remove(this);
+				}
+			}
+		};
+		thread.setDaemon(true);
+		this.contextSaved.clear();
+		this.currentClass = null;
+		this.currentMethod = null;
+		this.methodStart = 0;
+		this.classStart = System.currentTimeMillis();
+		thread.start();
+		
+		try {
+			while (thread.isAlive()) {
+				thread.join(250);
+				if (thread.isAlive() && this.watchdog.isExpired(this.classStart, this.methodStart))
+					return this.abandon(thread, archive, entryNames);
+			}
+		} catch (InterruptedException exception) {
+			this.abandoned.add(thread);
+			thread.interrupt();
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Decompile interrupted");
+		}
+		if (failure[0] instanceof RuntimeException)
+			throw (RuntimeException) failure[0];
+		if (failure[0] instanceof Error)
+			throw (Error) failure[0];
+		return null;
+	}
+
+	@SuppressWarnings("deprecation")
+	private List<String> abandon(Thread thread, File archive, List<String> entryNames) {
+		// Results the abandoned context still saves are ignored
+		this.abandoned.add(thread);
+		thread.interrupt();
+		long elapsed = System.currentTimeMillis() - this.classStart;
+		String method = this.currentMethod;
+		
+		// The class being worked on when the budget ran out, or else the first one not saved yet
+		String culprit = null;
+		if (this.currentClass != null) {
+			String outerName = JarEntryUtility.getOuterClassName(this.currentClass + ".class");
+			for (String entryName : entryNames) {
+				String outerEntry = JarEntryUtility.getOuterClassName(entryName);
+				if ((outerEntry.equals(outerName) || outerEntry.endsWith("/" + outerName)) && !this.contextSaved.contains(getEntrySourceName(outerEntry))) {
+					culprit = outerEntry;
+					break;
+				}
+			}
+		}
+		List<String> remaining = new ArrayList<String>();
+		for (String entryName : entryNames) {
+			String outerEntry = JarEntryUtility.getOuterClassName(entryName);
+			if (this.contextSaved.contains(getEntrySourceName(outerEntry)))
+				continue;
+			if (culprit == null)
+				culprit = outerEntry;
+			if (!outerEntry.equals(culprit))
+				remaining.add(entryName);
+		}
+		if (culprit != null)
+			this.saveDegraded(archive, culprit, method, elapsed);
+		
+		try {
+			thread.join(1000);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+		if (thread.isAlive()) {
+			// Like Fernflower's own method timeout, a context that ignores the interrupt is stopped
+			try {
+				thread.stop();
+			} catch (UnsupportedOperationException exception) {
+				this.writeMessage("Could not stop the context of " + culprit + ", it keeps running in the background", Severity.WARN);
+			}
+		}
+		return remaining;
+	}
+
+	private void saveDegraded(File archive, String entryName, String method, long elapsed) {
+		String sourceName = getEntrySourceName(entryName);
+		this.watchdog.classTimedOut(sourceName, method, elapsed);
+		this.writeMessage("Decompiling " + sourceName + " timed out after " + elapsed + " ms" + (method != null ? " in " + method : ""), Severity.WARN);
+		
+		String comment = "Decompiling timed out after " + elapsed + " ms, only the declarations are shown";
+		String content;
+		try {
+			content = ClassStub.create(this.getBytecode(archive.getAbsolutePath(), entryName), comment);
+		} catch (IOException | RuntimeException exception) {
+			content = "// " + comment + "\n";
+		}
+		// Stubs are not cached, a later run with another budget may succeed
+		this.cacheKeys.remove(sourceName);
+		this.storeResult(sourceName, content);
+		if (this.progress != null)
+			this.progress.classDecompiled(sourceName);
+	}
+
+	private void decompileContext(File archive, List<String> entryNames) {
+		Fernflower fernflower = new Fernflower(this, this, this.options, this);
+		long start = System.nanoTime();
+		try {
+			// The archive is only context, the given entries are the sources. Fernflower can only
+			// read libraries from files, so classes of nested archives are decompiled on their own
+			boolean nested = false;
+			for (String entryName : entryNames)
+				nested |= entryName.contains(ArchiveManager.NESTED_SEPARATOR);
+			if (!nested)
+				fernflower.addLibrary(this.archiveContext != null ? this.archiveContext : archive);
+			for (File library : this.libraries)
+				fernflower.addLibrary(library);
+			// Sources are added last, so they replace their own class in the context
+			for (String entryName : entryNames)
+				fernflower.addSource(this.createEntrySource(archive, entryName));
+			if (this.progress != null)
+				this.progress.checkCancelled();
+			fernflower.decompileContext();
+			DecompileMetrics.getInstance().contextFinished(System.nanoTime() - start);
+		} finally {
+			fernflower.clearContext();
+			this.flushClassMessages(null);
+		}
+	}
+	
+	public File createEntrySource(File archive, String entryName) {
+		// Virtual class file which Fernflower can add as a source, read back from the archive in getBytecode
+		File source = new File(archive.getAbsolutePath() + "!" + File.separator + entryName.replace('/', File.separatorChar));
+		this.entrySources.put(source.getAbsolutePath(), new String[] { archive.getAbsolutePath(), entryName });
+		
+		// Results are saved under their qualified name, which leaves out folders such as BOOT-INF/classes/
+		// and nested archives, so remember the entries by simple name to map them back
+		String entryPath = entryName.substring(0, entryName.length() - 6);
+		String simpleName = entryPath.substring(entryPath.lastIndexOf('/') + 1);
+		synchronized (this.sourceEntries) {
+			List<String> entries = this.sourceEntries.get(simpleName);
+			if (entries == null) {
+				entries = new ArrayList<String>();
+				this.sourceEntries.put(simpleName, entries);
+			}
+			entries.add(entryPath);
+		}
+		return source;
 	}
 	
 	@Override
@@ -57,12 +276,43 @@ public class FernflowerBridge extends IFernflowerLogger implements IBytecodeProv
 
 	@Override
 	public void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content) {
-		System.out.println("Decompile: " + entryName);
-		this.decompiledClasses.put(entryName, new FFDecompiledClass(entryName, content));
+		if (this.abandoned.contains(Thread.currentThread()))
+			return;
+		this.contextSaved.add(entryName);
+		if (Log.isEnabled(Severity.TRACE))
+			Log.trace("Decompiled " + entryName);
+		if (content != null)
+			DecompileMetrics.getInstance().sourceProduced(content.length());
+		this.storeResult(entryName, content);
+		String cacheKey = this.cacheKeys.remove(entryName);
+		if (cacheKey != null && this.cache != null)
+			this.cache.put(cacheKey, content);
+		if (this.progress != null)
+			this.progress.classDecompiled(entryName);
 	}
 
 	@Override
-	public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {}
+	public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
+		// Standalone class files are stored under their qualified name, the same way archive entries are
+		this.saveClassEntry(path, null, qualifiedName, this.getSourceName(qualifiedName), content);
+	}
+	
+	private String getSourceName(String qualifiedName) {
+		String simpleName = qualifiedName.substring(qualifiedName.lastIndexOf('/') + 1);
+		synchronized (this.sourceEntries) {
+			List<String> entries = this.sourceEntries.get(simpleName);
+			if (entries != null) {
+				for (int i = 0; i < entries.size(); i++) {
+					String entryPath = entries.get(i);
+					if (entryPath.equals(qualifiedName) || entryPath.endsWith("/" + qualifiedName)) {
+						entries.remove(i);
+						return entryPath + ".java";
+					}
+				}
+			}
+		}
+		return qualifiedName + ".java";
+	}
 
 	@Override
 	public void saveDirEntry(String arg0, String arg1, String arg2) {
@@ -74,16 +324,19 @@ public class FernflowerBridge extends IFernflowerLogger implements IBytecodeProv
 
 	@Override
 	public byte[] getBytecode(String externalPath, String internalPath) throws IOException {
+		String[] entrySource = this.entrySources.get(externalPath);
+		if (entrySource != null) {
+			externalPath = entrySource[0];
+			internalPath = entrySource[1];
+		}
+		
 		File file = new File(externalPath);
 		if (internalPath == null) {
 			return getBytes(file);
+		} else if (this.bytecodeProvider != null && !internalPath.contains(ArchiveManager.NESTED_SEPARATOR)) {
+			return this.bytecodeProvider.getBytecode(externalPath, internalPath);
 		} else {
-			try (ZipFile archive = new ZipFile(file)) {
-				ZipEntry entry = archive.getEntry(internalPath);
-				if (entry == null)
-					throw new IOException("Entry not found: " + internalPath);
-				return getBytes(archive, entry);
-			}
+			return this.archiveManager.readEntry(file, internalPath);
 		}
 	}
 
@@ -116,21 +369,270 @@ public class FernflowerBridge extends IFernflowerLogger implements IBytecodeProv
 
 	@Override
 	public void writeMessage(String string, Severity severity) {
-		System.out.println(severity.prefix + string);
+		if (!this.accepts(severity) || !Log.isEnabled(severity))
+			return;
+		if (severity.ordinal() >= Severity.WARN.ordinal()) {
+			Log.log(severity, string, null);
+			return;
+		}
+		synchronized (this.classMessages) {
+			this.classMessages.append(System.lineSeparator()).append("  ").append(string);
+			this.classMessageCount++;
+			if (severity.ordinal() > this.classMessageSeverity.ordinal())
+				this.classMessageSeverity = severity;
+		}
 	}
 
 	@Override
 	public void writeMessage(String string, Severity severity, Throwable throwable) {
-		System.out.println(severity.prefix + string);
-		throwable.printStackTrace();
+		if (this.accepts(severity))
+			Log.log(severity, string, throwable);
+	}
+
+	public void flushMessages() {
+		this.flushClassMessages(null);
+	}
+
+	private void flushClassMessages(String nextClass) {
+		// Messages of a class are logged as one entry once Fernflower moves on to another class
+		synchronized (this.classMessages) {
+			if (this.classMessageCount > 0) {
+				Log.log(this.classMessageSeverity, (this.messageClass != null ? this.messageClass : "Context") + " (" + this.classMessageCount + " messages)" + this.classMessages, null);
+				this.classMessages.setLength(0);
+				this.classMessageCount = 0;
+				this.classMessageSeverity = Severity.TRACE;
+			}
+			this.messageClass = nextClass;
+		}
+	}
+	
+	@Override
+	public void startReadingClass(String className) {
+		this.startActivity(className);
+	}
+
+	@Override
+	public void startClass(String className) {
+		if (!this.startActivity(className))
+			return;
+		this.processClass = className;
+		this.processStart = System.nanoTime();
+	}
+
+	@Override
+	public void endClass() {
+		String className = this.processClass;
+		if (className != null && !this.abandoned.contains(Thread.currentThread()))
+			DecompileMetrics.getInstance().classDecompiled(className, System.nanoTime() - this.processStart);
+		this.processClass = null;
+	}
+
+	@Override
+	public void startWriteClass(String className) {
+		this.startActivity(className);
+	}
+
+	private boolean startActivity(String className) {
+		// An abandoned context must not move the budget of the one that replaced it
+		if (this.abandoned.contains(Thread.currentThread()))
+			return false;
+		if (!className.equals(this.messageClass))
+			this.flushClassMessages(className);
+		// Reading, processing and writing one class share its budget
+		if (!className.equals(this.currentClass)) {
+			this.currentClass = className;
+			this.classStart = System.currentTimeMillis();
+		}
+		return true;
+	}
+
+	@Override
+	public void startMethod(String methodName) {
+		if (this.abandoned.contains(Thread.currentThread()))
+			return;
+		this.currentMethod = methodName;
+		this.methodStart = System.currentTimeMillis();
+	}
+
+	@Override
+	public void endMethod() {
+		if (this.abandoned.contains(Thread.currentThread()))
+			return;
+		// Slow methods are reported, also when Fernflower still finished or gave up on them itself
+		String method = this.currentMethod;
+		if (this.watchdog != null && method != null && this.currentClass != null)
+			this.watchdog.methodTimedOut(getEntrySourceName(JarEntryUtility.getOuterClassName(this.currentClass + ".class")), method, System.currentTimeMillis() - this.methodStart);
+		this.currentMethod = null;
+		this.methodStart = 0;
 	}
 	
 	public FFDecompiledClass getDecompiledClass(String entryName) {
-		return this.decompiledClasses.get(entryName);
+		return this.resultStore.get(entryName);
+	}
+	
+	public boolean loadCachedClass(String entryName, String cacheKey) {
+		if (this.cache == null || cacheKey == null)
+			return false;
+		String content = this.cache.get(cacheKey);
+		if (content == null)
+			return false;
+		this.storeResult(entryName, content);
+		return true;
+	}
+	
+	public String getCacheKey(File archive, List<String> entryNames, List<byte[]> classBytes) {
+		if (this.cache == null)
+			return null;
+		
+		// The archive context holds every other class of the archive and changes the output as well. The
+		// classes these ones reference are part of the key, so their dependents miss once they change
+		Map<String, Object> options = new HashMap<String, Object>(this.options);
+		options.put("verdant.references", this.getReferenceKey(archive, entryNames, classBytes));
+		// A library rebuilt under the same name gets another key from its size and modification time
+		if (!this.libraries.isEmpty()) {
+			StringBuilder libraries = new StringBuilder();
+			for (File library : this.libraries)
+				libraries.append(ClassStructureCache.createKey(library)).append(';');
+			options.put("verdant.libraries", libraries.toString());
+		}
+		return this.cache.createKey(options, classBytes);
+	}
+	
+	private String getReferenceKey(File archive, List<String> entryNames, List<byte[]> classBytes) {
+		Map<String, Long> references = new TreeMap<String, Long>();
+		for (int i = 0; i < classBytes.size(); i++) {
+			try {
+				ConstantPoolReader reader = new ConstantPoolReader(classBytes.get(i));
+				// Entries may sit below a folder or in a nested archive, the classes they reference sit next to them
+				String entryPath = entryNames.get(i).substring(0, entryNames.get(i).length() - 6);
+				String className = reader.getEnd() + 4 <= reader.getBytes().length ? reader.getClassName(reader.readUnsignedShort(reader.getEnd() + 2)) : null;
+				String prefix = className != null && entryPath.endsWith(className) ? entryPath.substring(0, entryPath.length() - className.length()) : "";
+				for (String type : reader.getReferencedTypes()) {
+					String entryName = prefix + type + ".class";
+					if (!references.containsKey(entryName))
+						references.put(entryName, this.archiveManager.getEntryCrc(archive, entryName));
+				}
+			} catch (IOException | RuntimeException exception) {
+				// The key then only covers the bytes of the class itself
+				Log.trace("Could not read references of " + entryNames.get(i) + ": " + exception);
+			}
+		}
+		StringBuilder key = new StringBuilder();
+		for (Map.Entry<String, Long> reference : references.entrySet())
+			if (reference.getValue() != -1)
+				key.append(reference.getKey()).append(':').append(Long.toHexString(reference.getValue())).append(';');
+		return key.toString();
+	}
+	
+	public void registerCacheKey(String entryName, String cacheKey) {
+		// saveClassEntry stores the content of this entry under the key
+		if (cacheKey != null)
+			this.cacheKeys.put(entryName, cacheKey);
+	}
+	
+	public void storeResult(String entryName, String content) {
+		this.resultStore.put(entryName, content);
+		// Sources are searchable as soon as they are stored
+		TrigramIndex searchIndex = this.searchIndex;
+		if (searchIndex != null && content != null)
+			searchIndex.add(entryName, content);
+	}
+	
+	public ResultStore getResultStore() {
+		return this.resultStore;
+	}
+	
+	public void addDecompiledClasses(FernflowerBridge other) {
+		for (String entryName : other.resultStore.getEntryNames()) {
+			FFDecompiledClass decompiledClass = other.resultStore.get(entryName);
+			if (decompiledClass != null)
+				this.storeResult(entryName, decompiledClass.getContent());
+		}
+	}
+
+	public DecompileProgress getProgress() {
+		return this.progress;
+	}
+
+	public void setProgress(DecompileProgress progress) {
+		this.progress = progress;
+	}
+
+	public ArchiveManager getArchiveManager() {
+		return this.archiveManager;
+	}
+
+	public void setArchiveManager(ArchiveManager archiveManager) {
+		this.archiveManager = archiveManager;
+	}
+
+	public IBytecodeProvider getBytecodeProvider() {
+		return this.bytecodeProvider;
+	}
+
+	public void setBytecodeProvider(IBytecodeProvider bytecodeProvider) {
+		// Alternative reader for archive entries, such as a MappedBytecodeProvider
+		this.bytecodeProvider = bytecodeProvider;
+	}
+
+	public File getArchiveContext() {
+		return this.archiveContext;
+	}
+
+	public void setArchiveContext(File archiveContext) {
+		// Class structures of the archive, read as context instead of the archive itself
+		this.archiveContext = archiveContext;
+	}
+
+	public DecompileWatchdog getWatchdog() {
+		return this.watchdog;
+	}
+
+	public void setWatchdog(DecompileWatchdog watchdog) {
+		this.watchdog = watchdog;
+	}
+
+	public List<File> getLibraries() {
+		return this.libraries;
+	}
+
+	public void setLibraries(List<File> libraries) {
+		this.libraries = libraries;
+	}
+
+	public DecompileCache getCache() {
+		return this.cache;
+	}
+
+	public void setCache(DecompileCache cache) {
+		this.cache = cache;
+	}
+
+	public TrigramIndex getSearchIndex() {
+		return this.searchIndex;
+	}
+
+	public void setSearchIndex(TrigramIndex searchIndex) {
+		this.searchIndex = searchIndex;
+	}
+
+	public Map<String, Object> getOptions() {
+		return this.options;
+	}
+
+	private static String getEntrySourceName(String entryName) {
+		return entryName.substring(0, entryName.length() - 5) + "java";
 	}
 
 	public void cleanup() {
-		this.decompiledClasses.clear();
+		this.resultStore.clear();
+		if (this.searchIndex != null)
+			this.searchIndex.clear();
+		this.entrySources.clear();
+		this.cacheKeys.clear();
+		synchronized (this.sourceEntries) {
+			this.sourceEntries.clear();
+		}
 	}
 
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.util.ArchiveSnapshot;
+import com.marcomoesman.verdant.util.ConstantPoolReader;
+
+public class IncrementalDecompiler {
+
+	private static final int CHUNK_SIZE = 64;
+
+	private final ArchiveSnapshot previousSnapshot;
+	private final ResultStore previousResults;
+
+	public IncrementalDecompiler(ArchiveSnapshot previousSnapshot, ResultStore previousResults) {
+		this.previousSnapshot = previousSnapshot;
+		this.previousResults = previousResults;
+	}
+
+	public Set<String> update(final File archive, final FernflowerBridge fernflowerBridge, ArchiveSnapshot snapshot) throws IOException, InterruptedException {
+		final Map<String, List<String>> innerClasses = fernflowerBridge.getArchiveManager().getEntryIndex(archive).getInnerClassMap();
+
+		// Classes which were changed, added or removed since the previous build
+		Set<String> changed = new HashSet<String>();
+		final List<String> unchanged = new ArrayList<String>();
+		for (String shard : snapshot.getShardNames()) {
+			if (snapshot.isShardUnchanged(shard, this.previousSnapshot))
+				unchanged.add(shard);
+			else
+				changed.add(shard);
+		}
+		for (String shard : this.previousSnapshot.getShardNames())
+			if (!snapshot.containsShard(shard))
+				changed.add(shard);
+
+		// Dependents are unchanged classes whose constant pool names a changed class. Entries may sit
+		// below a folder such as BOOT-INF/classes/, so every suffix of their path is a possible class name
+		final Set<String> changedNames = new HashSet<String>();
+		for (String shard : changed) {
+			String className = shard.substring(0, shard.length() - 6);
+			changedNames.add(className);
+			for (int i = className.indexOf('/'); i != -1; i = className.indexOf('/', i + 1))
+				changedNames.add(className.substring(i + 1));
+		}
+		Set<String> affected = new HashSet<String>();
+		for (String shard : changed)
+			affected.add(toSourceName(shard));
+
+		final boolean[] dependent = new boolean[unchanged.size()];
+		if (!changedNames.isEmpty()) {
+			int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), unchanged.size() / CHUNK_SIZE + 1));
+			final AtomicInteger next = new AtomicInteger();
+			final CountDownLatch done = new CountDownLatch(threads);
+			for (int i = 0; i < threads; i++) {
+				new Thread("Incremental Update " + i) {
+					public void run() {
+						try {
+							int chunk;
+							while ((chunk = next.getAndAdd(CHUNK_SIZE)) < unchanged.size()) {
+								int end = Math.min(chunk + CHUNK_SIZE, unchanged.size());
+								for (int j = chunk; j < end; j++) {
+									String shard = unchanged.get(j);
+									dependent[j] = referencesAny(archive, fernflowerBridge, shard, innerClasses.get(shard), changedNames);
+								}
+							}
+						} finally {
+							done.countDown();
+						}
+					}
+				}.start();
+			}
+			try {
+				done.await();
+			} finally {
+				// Workers stop at their next chunk when the caller is interrupted
+				next.set(unchanged.size());
+			}
+		}
+
+		for (int i = 0; i < unchanged.size(); i++) {
+			String sourceName = toSourceName(unchanged.get(i));
+			if (dependent[i]) {
+				affected.add(sourceName);
+				continue;
+			}
+			FFDecompiledClass decompiledClass = this.previousResults.get(sourceName);
+			if (decompiledClass != null)
+				fernflowerBridge.storeResult(sourceName, decompiledClass.getContent());
+		}
+		return affected;
+	}
+
+	private static boolean referencesAny(File archive, FernflowerBridge fernflowerBridge, String shard, List<String> inner, Set<String> names) {
+		List<String> entryNames = new ArrayList<String>();
+		entryNames.add(shard);
+		if (inner != null)
+			entryNames.addAll(inner);
+		for (String entryName : entryNames) {
+			try {
+				ConstantPoolReader reader = new ConstantPoolReader(fernflowerBridge.getBytecode(archive.getAbsolutePath(), entryName));
+				// The classes in use and the types in declarations, the same ones the cache key covers
+				for (String type : reader.getReferencedTypes())
+					if (referencesAny(type, names))
+						return true;
+			} catch (IOException | RuntimeException exception) {
+				// A class which can not be read is decompiled again rather than kept
+				Log.warn("Could not read references of " + entryName + ": " + exception);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean referencesAny(String className, Set<String> names) {
+		if (className == null)
+			return false;
+		if (names.contains(className))
+			return true;
+		// Inner classes belong to the shard of their outer class
+		for (int i = className.indexOf('$'); i != -1; i = className.indexOf('$', i + 1))
+			if (names.contains(className.substring(0, i)))
+				return true;
+		return false;
+	}
+
+	private static String toSourceName(String classEntryName) {
+		return classEntryName.substring(0, classEntryName.length() - 5) + "java";
+	}
+
+}
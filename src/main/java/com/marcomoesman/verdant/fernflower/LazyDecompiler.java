@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.util.ArchiveEntryIndex;
+import com.marcomoesman.verdant.util.ArchiveManager;
+
+public class LazyDecompiler {
+
+	private final File archive;
+	private final FernflowerBridge fernflowerBridge;
+	private final ArchiveEntryIndex entryIndex;
+
+	public LazyDecompiler(File archive, FernflowerBridge fernflowerBridge) throws IOException {
+		this.archive = archive;
+		this.fernflowerBridge = fernflowerBridge;
+		this.entryIndex = fernflowerBridge.getArchiveManager().getEntryIndex(archive);
+	}
+
+	public FFDecompiledClass decompile(String entryName) {
+		String sourceName = entryName.substring(0, entryName.length() - 5) + "java";
+		FFDecompiledClass decompiledClass = this.fernflowerBridge.getDecompiledClass(sourceName);
+		if (decompiledClass != null)
+			return decompiledClass;
+
+		List<String> entryNames = new ArrayList<String>();
+		entryNames.add(entryName);
+		entryNames.addAll(this.getInnerClasses(entryName));
+		
+		String cacheKey = null;
+		if (this.fernflowerBridge.getCache() != null) {
+			try {
+				List<byte[]> classBytes = new ArrayList<byte[]>();
+				for (String name : entryNames)
+					classBytes.add(this.fernflowerBridge.getBytecode(this.archive.getAbsolutePath(), name));
+				cacheKey = this.fernflowerBridge.getCacheKey(this.archive, entryNames, classBytes);
+			} catch (IOException exception) {
+				Log.error("Could not read " + entryName, exception);
+			}
+			if (this.fernflowerBridge.loadCachedClass(sourceName, cacheKey))
+				return this.fernflowerBridge.getDecompiledClass(sourceName);
+		}
+		return this.decompile(sourceName, entryNames, cacheKey);
+	}
+
+	private synchronized FFDecompiledClass decompile(String sourceName, List<String> entryNames, String cacheKey) {
+		// The bridge keeps the state of one Fernflower context, another thread may have decompiled the class meanwhile
+		FFDecompiledClass decompiledClass = this.fernflowerBridge.getDecompiledClass(sourceName);
+		if (decompiledClass != null)
+			return decompiledClass;
+		this.fernflowerBridge.registerCacheKey(sourceName, cacheKey);
+		this.fernflowerBridge.decompileEntries(this.archive, entryNames);
+		return this.fernflowerBridge.getDecompiledClass(sourceName);
+	}
+
+	public List<String> getInnerClasses(String entryName) {
+		int separator = entryName.lastIndexOf(ArchiveManager.NESTED_SEPARATOR);
+		if (separator == -1)
+			return this.entryIndex.getInnerClasses(entryName);
+		
+		String prefix = entryName.substring(0, separator + ArchiveManager.NESTED_SEPARATOR.length());
+		List<String> inner;
+		try {
+			// Nested archives are only indexed once a class of them is opened
+			inner = this.fernflowerBridge.getArchiveManager().getNestedEntryIndex(this.archive, entryName.substring(0, separator)).getInnerClasses(entryName.substring(prefix.length()));
+		} catch (IOException exception) {
+			Log.error("Could not read " + entryName.substring(0, separator), exception);
+			return Collections.emptyList();
+		}
+		List<String> nestedInner = new ArrayList<String>(inner.size());
+		for (String innerClass : inner)
+			nestedInner.add(prefix + innerClass);
+		return nestedInner;
+	}
+
+	public File getArchive() {
+		return this.archive;
+	}
+
+}
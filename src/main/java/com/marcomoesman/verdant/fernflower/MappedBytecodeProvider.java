@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.java.decompiler.main.extern.IBytecodeProvider;
+
+import com.marcomoesman.verdant.metrics.DecompileMetrics;
+import com.marcomoesman.verdant.util.MappedArchive;
+
+public class MappedBytecodeProvider implements IBytecodeProvider {
+
+	private final Map<String, MappedArchive> archives;
+
+	public MappedBytecodeProvider() {
+		this.archives = new ConcurrentHashMap<String, MappedArchive>();
+	}
+
+	@Override
+	public byte[] getBytecode(String externalPath, String internalPath) throws IOException {
+		if (internalPath == null)
+			throw new IOException("Only archive entries can be mapped: " + externalPath);
+		long start = System.nanoTime();
+		byte[] bytes = this.getArchive(new File(externalPath)).read(internalPath);
+		DecompileMetrics.getInstance().bytecodeRead(bytes.length, System.nanoTime() - start);
+		return bytes;
+	}
+
+	public MappedArchive getArchive(File file) throws IOException {
+		String path = file.getAbsolutePath();
+		MappedArchive archive = this.archives.get(path);
+		if (archive != null)
+			return archive;
+
+		synchronized (this.archives) {
+			archive = this.archives.get(path);
+			if (archive == null) {
+				archive = new MappedArchive(file);
+				this.archives.put(path, archive);
+			}
+			return archive;
+		}
+	}
+
+	public void close() {
+		// Mappings are released once they are no longer referenced
+		this.archives.clear();
+	}
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class MemoryResultStore implements ResultStore {
+
+	private final Map<String, FFDecompiledClass> decompiledClasses;
+
+	public MemoryResultStore() {
+		this.decompiledClasses = new ConcurrentHashMap<String, FFDecompiledClass>();
+	}
+
+	@Override
+	public void put(String entryName, String content) {
+		this.decompiledClasses.put(entryName, new FFDecompiledClass(entryName, content));
+	}
+
+	@Override
+	public FFDecompiledClass get(String entryName) {
+		return this.decompiledClasses.get(entryName);
+	}
+
+	@Override
+	public boolean contains(String entryName) {
+		return this.decompiledClasses.containsKey(entryName);
+	}
+
+	@Override
+	public Collection<String> getEntryNames() {
+		return new ArrayList<String>(this.decompiledClasses.keySet());
+	}
+
+	@Override
+	public void clear() {
+		this.decompiledClasses.clear();
+	}
+
+}
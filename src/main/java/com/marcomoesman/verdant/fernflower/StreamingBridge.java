@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.metrics.DecompileMetrics;
+import com.marcomoesman.verdant.util.ArchiveManager;
+
+public class StreamingBridge extends FernflowerBridge {
+
+	private final File output;
+	private final boolean sourceJar;
+	private final Set<String> writtenEntries;
+
+	private ZipOutputStream archiveStream = null;
+	private int classes = 0;
+	private int resources = 0;
+	private int rejected = 0;
+
+	public StreamingBridge(File output, boolean sourceJar) {
+		super(new MemoryResultStore(), new ArchiveManager());
+		this.output = output;
+		this.sourceJar = sourceJar;
+		this.writtenEntries = new HashSet<String>();
+	}
+
+	@Override
+	public void saveFolder(String path) {
+		this.createDirectory(this.sourceJar ? this.output.getParentFile() : this.output);
+	}
+
+	@Override
+	public void copyFile(String source, String path, String entryName) {
+		try (InputStream stream = new FileInputStream(source)) {
+			if (this.writeEntry(entryName, stream))
+				this.resources++;
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	@Override
+	public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
+		this.saveClassEntry(path, null, qualifiedName, qualifiedName + ".java", content);
+	}
+
+	@Override
+	public void createArchive(String path, String archiveName, Manifest manifest) {
+		if (!this.sourceJar) {
+			this.createDirectory(this.output);
+			return;
+		}
+
+		try {
+			this.openArchive(manifest);
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	private ZipOutputStream openArchive(Manifest manifest) throws IOException {
+		if (this.archiveStream != null)
+			return this.archiveStream;
+
+		this.createDirectory(this.output.getParentFile());
+		OutputStream stream = new FileOutputStream(this.output);
+		if (manifest != null) {
+			this.archiveStream = new JarOutputStream(stream, manifest);
+			this.writtenEntries.add(JarFile.MANIFEST_NAME);
+		} else {
+			this.archiveStream = new ZipOutputStream(stream);
+		}
+		return this.archiveStream;
+	}
+
+	@Override
+	public void saveDirEntry(String path, String archiveName, String entryName) {
+		File directory = this.resolve(entryName);
+		if (directory == null)
+			return;
+		if (!this.sourceJar) {
+			this.createDirectory(directory);
+			return;
+		}
+
+		String name = entryName.endsWith("/") ? entryName : entryName + "/";
+		if (!this.writtenEntries.add(name))
+			return;
+		try {
+			this.openArchive(null).putNextEntry(new ZipEntry(name));
+			this.archiveStream.closeEntry();
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	@Override
+	public void copyEntry(String source, String path, String archiveName, String entryName) {
+		try {
+			JarFile archive = this.getArchiveManager().getArchive(new File(source));
+			ZipEntry entry = archive.getEntry(entryName);
+			if (entry == null)
+				return;
+			try (InputStream stream = archive.getInputStream(entry)) {
+				if (this.writeEntry(entryName, stream))
+					this.resources++;
+			}
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	@Override
+	public void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName, String content) {
+		// Written straight through, nothing is kept in memory
+		if (content == null)
+			return;
+		File file = this.resolve(entryName);
+		if (file == null)
+			return;
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		try {
+			if (this.sourceJar) {
+				if (!this.writtenEntries.add(entryName))
+					return;
+				this.openArchive(null).putNextEntry(new ZipEntry(entryName));
+				this.archiveStream.write(bytes);
+				this.archiveStream.closeEntry();
+			} else {
+				this.createDirectory(file.getParentFile());
+				try (OutputStream stream = new FileOutputStream(file)) {
+					stream.write(bytes);
+				}
+			}
+			this.classes++;
+			DecompileMetrics.getInstance().sourceProduced(content.length());
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+		if (this.getProgress() != null)
+			this.getProgress().classDecompiled(entryName);
+	}
+
+	@Override
+	public void closeArchive(String path, String archiveName) {
+		this.close();
+	}
+
+	public void close() {
+		if (this.archiveStream == null)
+			return;
+		try {
+			this.archiveStream.close();
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		} finally {
+			this.archiveStream = null;
+		}
+	}
+
+	private boolean writeEntry(String entryName, InputStream stream) throws IOException {
+		File file = this.resolve(entryName);
+		if (file == null)
+			return false;
+		byte[] buffer = new byte[8192];
+		int count;
+		if (this.sourceJar) {
+			if (!this.writtenEntries.add(entryName))
+				return false;
+			this.openArchive(null).putNextEntry(new ZipEntry(entryName));
+			while ((count = stream.read(buffer)) != -1)
+				this.archiveStream.write(buffer, 0, count);
+			this.archiveStream.closeEntry();
+		} else {
+			this.createDirectory(file.getParentFile());
+			try (OutputStream output = new FileOutputStream(file)) {
+				while ((count = stream.read(buffer)) != -1)
+					output.write(buffer, 0, count);
+			}
+		}
+		return true;
+	}
+
+	private File resolve(String entryName) {
+		// Entry names come from the archive, one such as ../../.bashrc or an absolute path must not
+		// be written outside of the output. A sources jar gets the same names, so it is checked as well
+		Path root = this.output.toPath().toAbsolutePath().normalize();
+		try {
+			Path path = root.resolve(entryName).normalize();
+			if (path.startsWith(root) && !path.equals(root))
+				return path.toFile();
+		} catch (InvalidPathException exception) {
+			// Names this file system can not hold are rejected the same way
+		}
+		Log.warn("Skipped " + entryName + ", its name points outside of " + this.output);
+		this.rejected++;
+		return null;
+	}
+
+	private void createDirectory(File directory) {
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+			throw new UncheckedIOException(new IOException("Could not create " + directory));
+	}
+
+	public int getClasses() {
+		return this.classes;
+	}
+
+	public int getResources() {
+		return this.resources;
+	}
+
+	public int getRejected() {
+		return this.rejected;
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.marcomoesman.verdant.util.ArchiveManager;
+
+public class Workspace {
+
+	private final ClassStructureCache structureCache;
+	private final List<File> libraries;
+
+	public Workspace(ClassStructureCache structureCache) {
+		this.structureCache = structureCache;
+		this.libraries = new CopyOnWriteArrayList<File>();
+	}
+
+	public void addLibrary(File library) throws IOException {
+		if (this.libraries.contains(library))
+			return;
+		// Read the structures once, every archive of the workspace shares them
+		ArchiveManager archiveManager = new ArchiveManager();
+		try {
+			this.structureCache.getStructure(library, archiveManager);
+		} finally {
+			archiveManager.close();
+		}
+		this.libraries.add(library);
+	}
+
+	public void removeLibrary(File library) {
+		this.libraries.remove(library);
+	}
+
+	public void clearLibraries() {
+		this.libraries.clear();
+	}
+
+	public List<File> getLibraries() {
+		return this.libraries;
+	}
+
+	public File getArchiveContext(File archive, ArchiveManager archiveManager) throws IOException {
+		return this.structureCache.getStructure(archive, archiveManager);
+	}
+
+	public List<File> getLibraryContext(File archive) throws IOException {
+		List<File> context = new ArrayList<File>();
+		ArchiveManager archiveManager = new ArchiveManager();
+		try {
+			for (File library : this.libraries) {
+				if (!library.equals(archive))
+					context.add(this.structureCache.getStructure(library, archiveManager));
+			}
+		} finally {
+			archiveManager.close();
+		}
+		return context;
+	}
+
+	public ClassStructureCache getStructureCache() {
+		return this.structureCache;
+	}
+
+}
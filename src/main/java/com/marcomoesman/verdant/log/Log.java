@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.log;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger.Severity;
+
+public final class Log {
+
+	// Only messages below WARN count against the capacity, errors and warnings are always queued
+	private static final int QUEUE_CAPACITY = 8192;
+	private static final int BUFFER_CAPACITY = 5000;
+	// Messages below WARN beyond this rate are dropped, errors and warnings are always kept
+	private static final int MAX_MESSAGES_PER_SECOND = 2000;
+
+	private static final BlockingQueue<Record> QUEUE = new LinkedBlockingQueue<Record>();
+	private static final AtomicInteger PENDING = new AtomicInteger();
+	private static final LogBuffer BUFFER = new LogBuffer(BUFFER_CAPACITY);
+	private static final AtomicLong DROPPED = new AtomicLong();
+	private static final AtomicInteger SECOND_MESSAGES = new AtomicInteger();
+	private static final AtomicLong QUEUED = new AtomicLong();
+	private static final AtomicLong WRITTEN = new AtomicLong();
+	private static volatile long currentSecond = 0;
+	private static volatile Severity level = Severity.INFO;
+
+	static {
+		Thread writer = new Thread("Log Writer") {
+			public void run() {
+				Log.write();
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private Log() {}
+
+	public static boolean isEnabled(Severity severity) {
+		return severity.ordinal() >= level.ordinal();
+	}
+
+	public static Severity getLevel() {
+		return level;
+	}
+
+	public static void setLevel(Severity severity) {
+		level = severity;
+	}
+
+	public static void trace(String message) {
+		log(Severity.TRACE, message, null);
+	}
+
+	public static void info(String message) {
+		log(Severity.INFO, message, null);
+	}
+
+	public static void warn(String message) {
+		log(Severity.WARN, message, null);
+	}
+
+	public static void error(String message) {
+		log(Severity.ERROR, message, null);
+	}
+
+	public static void error(String message, Throwable throwable) {
+		log(Severity.ERROR, message, throwable);
+	}
+
+	public static void log(Severity severity, String message, Throwable throwable) {
+		if (!isEnabled(severity))
+			return;
+		if (severity.ordinal() < Severity.WARN.ordinal()) {
+			if (!acquire()) {
+				DROPPED.incrementAndGet();
+				return;
+			}
+			if (PENDING.incrementAndGet() > QUEUE_CAPACITY) {
+				PENDING.decrementAndGet();
+				DROPPED.incrementAndGet();
+				return;
+			}
+		}
+		QUEUE.add(new Record(severity, message, throwable));
+		QUEUED.incrementAndGet();
+	}
+
+	private static boolean acquire() {
+		long second = System.nanoTime() / 1000000000L;
+		if (second != currentSecond) {
+			currentSecond = second;
+			SECOND_MESSAGES.set(0);
+		}
+		return SECOND_MESSAGES.incrementAndGet() <= MAX_MESSAGES_PER_SECOND;
+	}
+
+	public static void flush() {
+		// Waits until everything queued so far is written, for example before the process exits
+		long queued = QUEUED.get();
+		long deadline = System.currentTimeMillis() + 5000L;
+		while (WRITTEN.get() < queued && System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	public static LogBuffer getBuffer() {
+		return BUFFER;
+	}
+
+	public static long getDropped() {
+		return DROPPED.get();
+	}
+
+	private static void write() {
+		SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+		List<Record> records = new ArrayList<Record>();
+		long reportedDrops = 0;
+		while (true) {
+			try {
+				records.add(QUEUE.take());
+			} catch (InterruptedException exception) {
+				return;
+			}
+			QUEUE.drainTo(records);
+			
+			// Everything that piled up is written at once
+			StringBuilder output = new StringBuilder();
+			long dropped = DROPPED.get();
+			if (dropped > reportedDrops) {
+				String line = format.format(new Date()) + " " + Severity.WARN.prefix + (dropped - reportedDrops) + " log messages dropped";
+				output.append(line).append(System.lineSeparator());
+				BUFFER.add(line);
+				reportedDrops = dropped;
+			}
+			for (Record record : records) {
+				if (record.severity.ordinal() < Severity.WARN.ordinal())
+					PENDING.decrementAndGet();
+				String line = format.format(new Date(record.time)) + " " + record.severity.prefix + record.message;
+				if (record.throwable != null) {
+					StringWriter trace = new StringWriter();
+					record.throwable.printStackTrace(new PrintWriter(trace));
+					line += System.lineSeparator() + trace.toString().trim();
+				}
+				output.append(line).append(System.lineSeparator());
+				BUFFER.add(line);
+			}
+			PrintStream stream = System.err;
+			stream.print(output);
+			stream.flush();
+			WRITTEN.addAndGet(records.size());
+			records.clear();
+		}
+	}
+
+	private static final class Record {
+
+		private final Severity severity;
+		private final String message;
+		private final Throwable throwable;
+		private final long time;
+
+		private Record(Severity severity, String message, Throwable throwable) {
+			this.severity = severity;
+			this.message = message;
+			this.throwable = throwable;
+			this.time = System.currentTimeMillis();
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LogBuffer {
+
+	private final String[] lines;
+	private long written = 0;
+
+	public LogBuffer(int capacity) {
+		this.lines = new String[capacity];
+	}
+
+	public synchronized void add(String line) {
+		// The oldest line is overwritten once the buffer is full
+		this.lines[(int) (this.written % this.lines.length)] = line;
+		this.written++;
+	}
+
+	public synchronized List<String> getLines() {
+		int size = (int) Math.min(this.written, this.lines.length);
+		List<String> lines = new ArrayList<String>(size);
+		for (long i = this.written - size; i < this.written; i++)
+			lines.add(this.lines[(int) (i % this.lines.length)]);
+		return lines;
+	}
+
+	public synchronized long getWritten() {
+		return this.written;
+	}
+
+	public int getCapacity() {
+		return this.lines.length;
+	}
+
+	public synchronized void clear() {
+		for (int i = 0; i < this.lines.length; i++)
+			this.lines[i] = null;
+		this.written = 0;
+	}
+
+}
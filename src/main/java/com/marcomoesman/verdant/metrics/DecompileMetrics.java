@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.marcomoesman.verdant.log.Log;
+
+public class DecompileMetrics implements DecompileMetricsMBean {
+
+	public static final String OBJECT_NAME = "com.marcomoesman.verdant:type=DecompileMetrics";
+
+	private static final DecompileMetrics INSTANCE = new DecompileMetrics();
+	private static final int SLOWEST_CLASSES = 20;
+
+	private final LatencyHistogram classLatency;
+	private final LatencyHistogram contextLatency;
+	private final LatencyHistogram archiveReadLatency;
+	private final LongAdder bytecodeBytes;
+	private final LongAdder sourceCharacters;
+	private final LongAdder cacheHits;
+	private final LongAdder cacheMisses;
+	// Slowest classes in descending order, as name and microseconds
+	private final List<Object[]> slowestClasses;
+	private volatile IntSupplier queueDepth = null;
+
+	private DecompileMetrics() {
+		this.classLatency = new LatencyHistogram();
+		this.contextLatency = new LatencyHistogram();
+		this.archiveReadLatency = new LatencyHistogram();
+		this.bytecodeBytes = new LongAdder();
+		this.sourceCharacters = new LongAdder();
+		this.cacheHits = new LongAdder();
+		this.cacheMisses = new LongAdder();
+		this.slowestClasses = new ArrayList<Object[]>();
+	}
+
+	public static DecompileMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	public static void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name))
+				server.registerMBean(INSTANCE, name);
+		} catch (JMException exception) {
+			Log.error("Could not register decompile metrics", exception);
+		}
+	}
+
+	public void classDecompiled(String className, long nanos) {
+		this.classLatency.record(nanos);
+		long micros = nanos / 1000L;
+		synchronized (this.slowestClasses) {
+			int size = this.slowestClasses.size();
+			if (size >= SLOWEST_CLASSES && micros <= (Long) this.slowestClasses.get(size - 1)[1])
+				return;
+			int index = 0;
+			while (index < size && (Long) this.slowestClasses.get(index)[1] >= micros)
+				index++;
+			this.slowestClasses.add(index, new Object[] { className, micros });
+			if (this.slowestClasses.size() > SLOWEST_CLASSES)
+				this.slowestClasses.remove(SLOWEST_CLASSES);
+		}
+	}
+
+	public void contextFinished(long nanos) {
+		this.contextLatency.record(nanos);
+	}
+
+	public void bytecodeRead(int bytes, long nanos) {
+		this.bytecodeBytes.add(bytes);
+		this.archiveReadLatency.record(nanos);
+	}
+
+	public void sourceProduced(int characters) {
+		this.sourceCharacters.add(characters);
+	}
+
+	public void cacheHit() {
+		this.cacheHits.increment();
+	}
+
+	public void cacheMiss() {
+		this.cacheMisses.increment();
+	}
+
+	public void setQueueDepth(IntSupplier queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public void clearQueueDepth(IntSupplier queueDepth) {
+		// Only when no newer queue replaced it
+		if (this.queueDepth == queueDepth)
+			this.queueDepth = null;
+	}
+
+	@Override
+	public long getClassesDecompiled() {
+		return this.classLatency.getCount();
+	}
+
+	@Override
+	public long getClassLatencyP50Micros() {
+		return this.classLatency.getPercentileMicros(50);
+	}
+
+	@Override
+	public long getClassLatencyP95Micros() {
+		return this.classLatency.getPercentileMicros(95);
+	}
+
+	@Override
+	public long getClassLatencyP99Micros() {
+		return this.classLatency.getPercentileMicros(99);
+	}
+
+	@Override
+	public long getClassLatencyMaxMicros() {
+		return this.classLatency.getMaxMicros();
+	}
+
+	@Override
+	public long getContextLatencyP95Micros() {
+		return this.contextLatency.getPercentileMicros(95);
+	}
+
+	@Override
+	public long getBytecodeBytesRead() {
+		return this.bytecodeBytes.sum();
+	}
+
+	@Override
+	public long getSourceCharactersProduced() {
+		return this.sourceCharacters.sum();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		IntSupplier queueDepth = this.queueDepth;
+		return queueDepth == null ? 0 : queueDepth.getAsInt();
+	}
+
+	@Override
+	public long getCacheHits() {
+		return this.cacheHits.sum();
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return this.cacheMisses.sum();
+	}
+
+	@Override
+	public double getCacheHitRate() {
+		long hits = this.cacheHits.sum();
+		long total = hits + this.cacheMisses.sum();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public long getArchiveReads() {
+		return this.archiveReadLatency.getCount();
+	}
+
+	@Override
+	public long getArchiveReadMillis() {
+		return this.archiveReadLatency.getSumMicros() / 1000L;
+	}
+
+	@Override
+	public String getSlowestClasses() {
+		StringBuilder builder = new StringBuilder("[");
+		synchronized (this.slowestClasses) {
+			for (int i = 0; i < this.slowestClasses.size(); i++) {
+				Object[] slowClass = this.slowestClasses.get(i);
+				if (i > 0)
+					builder.append(',');
+				builder.append("{\"class\":").append(quote((String) slowClass[0])).append(",\"micros\":").append(slowClass[1]).append('}');
+			}
+		}
+		return builder.append(']').toString();
+	}
+
+	@Override
+	public String getSnapshot() {
+		StringBuilder builder = new StringBuilder("{");
+		builder.append("\"timestamp\":").append(System.currentTimeMillis());
+		builder.append(",\"classLatency\":").append(this.classLatency.toJson());
+		builder.append(",\"contextLatency\":").append(this.contextLatency.toJson());
+		builder.append(",\"archiveReadLatency\":").append(this.archiveReadLatency.toJson());
+		builder.append(",\"bytecodeBytesRead\":").append(this.getBytecodeBytesRead());
+		builder.append(",\"sourceCharactersProduced\":").append(this.getSourceCharactersProduced());
+		builder.append(",\"queueDepth\":").append(this.getQueueDepth());
+		builder.append(",\"cacheHits\":").append(this.getCacheHits());
+		builder.append(",\"cacheMisses\":").append(this.getCacheMisses());
+		builder.append(",\"slowestClasses\":").append(this.getSlowestClasses());
+		return builder.append('}').toString();
+	}
+
+	@Override
+	public void reset() {
+		this.classLatency.reset();
+		this.contextLatency.reset();
+		this.archiveReadLatency.reset();
+		this.bytecodeBytes.reset();
+		this.sourceCharacters.reset();
+		this.cacheHits.reset();
+		this.cacheMisses.reset();
+		synchronized (this.slowestClasses) {
+			this.slowestClasses.clear();
+		}
+	}
+
+	private static String quote(String value) {
+		StringBuilder builder = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+				builder.append('\\').append(c);
+			else if (c < 0x20)
+				builder.append(String.format("\\u%04x", (int) c));
+			else
+				builder.append(c);
+		}
+		return builder.append('"').toString();
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+
+	// Values below 16 microseconds are exact, every power of two above is split in 16 buckets,
+	// which keeps percentiles within about 6% up to 2^41 microseconds
+	private static final int SUB_BUCKETS = 16;
+	static final int BUCKETS = SUB_BUCKETS + 37 * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets;
+	private final AtomicLong count;
+	private final AtomicLong sum;
+	private final AtomicLong max;
+
+	public LatencyHistogram() {
+		this.buckets = new AtomicLongArray(BUCKETS);
+		this.count = new AtomicLong();
+		this.sum = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000L);
+		this.buckets.incrementAndGet(getBucket(micros));
+		this.count.incrementAndGet();
+		this.sum.addAndGet(micros);
+		long previous;
+		while (micros > (previous = this.max.get()) && !this.max.compareAndSet(previous, micros));
+	}
+
+	public long getCount() {
+		return this.count.get();
+	}
+
+	public long getSumMicros() {
+		return this.sum.get();
+	}
+
+	public long getMaxMicros() {
+		return this.max.get();
+	}
+
+	public long getMeanMicros() {
+		long count = this.count.get();
+		return count == 0 ? 0 : this.sum.get() / count;
+	}
+
+	public long getPercentileMicros(double percentile) {
+		// Upper bound of the bucket the percentile falls in, never above the maximum seen
+		long count = this.count.get();
+		if (count == 0)
+			return 0;
+		long rank = (long) Math.ceil(count * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.buckets.get(i);
+			if (seen >= rank)
+				return Math.min(getUpperBound(i), this.max.get());
+		}
+		return this.max.get();
+	}
+
+	static int getBucket(long micros) {
+		if (micros < SUB_BUCKETS)
+			return (int) micros;
+		int shift = 59 - Long.numberOfLeadingZeros(micros);
+		int bucket = SUB_BUCKETS + shift * SUB_BUCKETS + (int) (micros >> shift) - SUB_BUCKETS;
+		return Math.min(BUCKETS - 1, bucket);
+	}
+
+	static long getUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		return ((long) (bucket % SUB_BUCKETS + SUB_BUCKETS + 1) << shift) - 1;
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			this.buckets.set(i, 0);
+		this.count.set(0);
+		this.sum.set(0);
+		this.max.set(0);
+	}
+
+	public String toJson() {
+		return "{\"count\":" + this.getCount() + ",\"meanMicros\":" + this.getMeanMicros() + ",\"p50Micros\":" + this.getPercentileMicros(50)
+				+ ",\"p95Micros\":" + this.getPercentileMicros(95) + ",\"p99Micros\":" + this.getPercentileMicros(99) + ",\"maxMicros\":" + this.getMaxMicros() + "}";
+	}
+
+}
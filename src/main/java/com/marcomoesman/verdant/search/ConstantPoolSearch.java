@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.marcomoesman.verdant.fernflower.FernflowerBridge;
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.util.ConstantPoolReader;
+import com.marcomoesman.verdant.util.JarEntryUtility;
+
+public class ConstantPoolSearch implements ArchiveSearch {
+
+	public static final int STRING_LITERALS = 0;
+	public static final int CLASS_REFERENCES = 1;
+	public static final int MEMBER_REFERENCES = 2;
+
+	// Classes a worker takes from the archive at a time
+	private static final int CHUNK_SIZE = 64;
+
+	private final FernflowerBridge fernflowerBridge;
+	private final File archive;
+	private final List<String> classEntries;
+	private final int kind;
+	private final boolean matchCase;
+	private final String text;
+	// Class references are matched on their internal name, members optionally on their owner
+	private final String owner;
+	private final String name;
+	private final int threads;
+	private volatile boolean cancelled = false;
+
+	public ConstantPoolSearch(FernflowerBridge fernflowerBridge, File archive, List<String> entryNames, int kind, String text, boolean matchCase) {
+		this.fernflowerBridge = fernflowerBridge;
+		this.archive = archive;
+		this.classEntries = new ArrayList<String>();
+		for (String entryName : entryNames)
+			if (entryName.endsWith(".class"))
+				this.classEntries.add(entryName);
+		this.kind = kind;
+		this.matchCase = matchCase;
+		this.text = matchCase ? text : text.toLowerCase(Locale.ROOT);
+		
+		String reference = text.trim().replace('.', '/');
+		int separator = reference.lastIndexOf('/');
+		if (kind == MEMBER_REFERENCES && separator != -1) {
+			this.owner = reference.substring(0, separator);
+			this.name = reference.substring(separator + 1);
+		} else {
+			this.owner = kind == CLASS_REFERENCES ? reference : null;
+			this.name = reference;
+		}
+		this.threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), this.classEntries.size() / CHUNK_SIZE + 1));
+	}
+
+	@Override
+	public void run(final SearchListener listener) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger found = new AtomicInteger();
+		final AtomicInteger matchedClasses = new AtomicInteger();
+		final AtomicInteger searchedClasses = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(this.threads);
+		for (int i = 0; i < this.threads; i++) {
+			new Thread("Constant Pool Search " + i) {
+				public void run() {
+					try {
+						int chunk;
+						while (!ConstantPoolSearch.this.cancelled && (chunk = next.getAndAdd(CHUNK_SIZE)) < ConstantPoolSearch.this.classEntries.size()) {
+							int end = Math.min(chunk + CHUNK_SIZE, ConstantPoolSearch.this.classEntries.size());
+							for (int j = chunk; j < end && found.get() < SourceSearch.MAX_RESULTS; j++) {
+								String entryName = ConstantPoolSearch.this.classEntries.get(j);
+								List<SearchResult> results;
+								try {
+									results = ConstantPoolSearch.this.search(entryName);
+								} catch (RuntimeException exception) {
+									// A malformed class is skipped, the rest of the chunk is still searched
+									Log.warn("Could not search " + entryName + ": " + exception);
+									continue;
+								} finally {
+									searchedClasses.incrementAndGet();
+								}
+								if (results.isEmpty())
+									continue;
+								found.addAndGet(results.size());
+								matchedClasses.incrementAndGet();
+								listener.found(results);
+							}
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		try {
+			done.await();
+		} finally {
+			// Workers stop at their next chunk when the caller is interrupted
+			this.cancelled |= done.getCount() > 0;
+		}
+		listener.finished(found.get(), matchedClasses.get(), searchedClasses.get(), this.classEntries.size(), System.currentTimeMillis() - start);
+	}
+
+	private List<SearchResult> search(String entryName) {
+		List<SearchResult> results = new ArrayList<SearchResult>();
+		ConstantPoolReader reader;
+		try {
+			reader = new ConstantPoolReader(this.fernflowerBridge.getBytecode(this.archive.getAbsolutePath(), entryName));
+		} catch (IOException exception) {
+			Log.trace("Could not read constant pool of " + entryName + ": " + exception.getMessage());
+			return results;
+		}
+
+		// Matches in inner classes are listed under the source of their outer class
+		String className = entryName.substring(0, entryName.length() - 6);
+		String sourceName = JarEntryUtility.getOuterClassName(entryName);
+		sourceName = sourceName.substring(0, sourceName.length() - 5) + "java";
+		String location = entryName.equals(JarEntryUtility.getOuterClassName(entryName)) ? "" : "  (in " + className.substring(className.lastIndexOf('/') + 1) + ")";
+		
+		Set<String> matches = new LinkedHashSet<String>();
+		for (int i = 1; i < reader.getCount(); i++) {
+			int tag = reader.getTag(i);
+			if (this.kind == STRING_LITERALS && tag == ConstantPoolReader.STRING) {
+				String literal = reader.getUtf8(reader.getReference(i, 0));
+				if (literal != null && (this.matchCase ? literal : literal.toLowerCase(Locale.ROOT)).contains(this.text))
+					matches.add("\"" + escape(literal) + "\"");
+			} else if (this.kind == CLASS_REFERENCES && tag == ConstantPoolReader.CLASS) {
+				String reference = ConstantPoolReader.getElementType(reader.getClassName(i));
+				if (reference != null && !reference.equals(className) && this.isClass(reference, this.owner))
+					matches.add(reference.replace('/', '.'));
+			} else if (this.kind == MEMBER_REFERENCES && (tag == ConstantPoolReader.FIELD_REF || tag == ConstantPoolReader.METHOD_REF
+					|| tag == ConstantPoolReader.INTERFACE_METHOD_REF)) {
+				int nameAndType = reader.getReference(i, 1);
+				String memberName = reader.getUtf8(reader.getReference(nameAndType, 0));
+				if (memberName == null || !(this.matchCase ? memberName.equals(this.name) : memberName.equalsIgnoreCase(this.name)))
+					continue;
+				// Members of primitive arrays, such as the clone of an int[], have no class to list
+				String memberOwner = ConstantPoolReader.getElementType(reader.getClassName(reader.getReference(i, 0)));
+				if (memberOwner == null || this.owner != null && !this.isClass(memberOwner, this.owner))
+					continue;
+				String descriptor = reader.getUtf8(reader.getReference(nameAndType, 1));
+				matches.add(memberOwner.replace('/', '.') + "." + memberName + (tag == ConstantPoolReader.FIELD_REF ? " : " : "") + descriptor);
+			}
+		}
+		if (this.kind == CLASS_REFERENCES) {
+			// Types used only in declarations, such as parameter and field types, are in the descriptors
+			for (String reference : reader.getDescriptorTypes())
+				if (!reference.equals(className) && this.isClass(reference, this.owner))
+					matches.add(reference.replace('/', '.'));
+		}
+		for (String match : matches)
+			results.add(new SearchResult(sourceName, 0, match + location));
+		return results;
+	}
+
+	private boolean isClass(String internalName, String query) {
+		if (internalName == null || internalName.length() < query.length())
+			return false;
+		int start = internalName.length() - query.length();
+		if (!internalName.regionMatches(!this.matchCase, start, query, 0, query.length()))
+			return false;
+		// A query without a package matches the simple name, Map$Entry as well as Entry
+		if (start == 0)
+			return true;
+		char before = internalName.charAt(start - 1);
+		return query.indexOf('/') == -1 && (before == '/' || before == '$');
+	}
+
+	private static String escape(String literal) {
+		StringBuilder builder = new StringBuilder(Math.min(literal.length(), 200));
+		for (int i = 0; i < literal.length() && builder.length() < 200; i++) {
+			char c = literal.charAt(i);
+			if (c == '\n')
+				builder.append("\\n");
+			else if (c == '\r')
+				builder.append("\\r");
+			else if (c == '\t')
+				builder.append("\\t");
+			else if (c == '"' || c == '\\')
+				builder.append('\\').append(c);
+			else
+				builder.append(c);
+		}
+		return builder.length() < 200 ? builder.toString() : builder + "...";
+	}
+
+	@Override
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public int getClassCount() {
+		return this.classEntries.size();
+	}
+
+}
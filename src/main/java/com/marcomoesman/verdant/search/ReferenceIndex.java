@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.marcomoesman.verdant.fernflower.DecompileProgress;
+import com.marcomoesman.verdant.fernflower.FernflowerBridge;
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.util.ArchiveManager;
+import com.marcomoesman.verdant.util.ConstantPoolReader;
+
+public class ReferenceIndex {
+
+	// Classes a worker takes from the archive at a time
+	private static final int CHUNK_SIZE = 64;
+	// Member id of a reference to the class itself
+	private static final int CLASS_REFERENCE = 0;
+	private static final int ACC_INTERFACE = 0x0200;
+
+	private final List<String> entryNames;
+	private final String[] classNames;
+	private final Map<String, Integer> classIds;
+	private final Map<String, Integer> memberIds;
+	// Archive entry of every class id, -1 for classes which are only referenced
+	private final int[] classEntries;
+	private final BitSet interfaces;
+	// Direct subtypes of every class id, extending classes and implementing classes alike
+	private final int[] subtypeOffsets;
+	private final int[] subtypes;
+	// References to every class id, the member id in the high and the referencing class in the low half
+	private final int[] referenceOffsets;
+	private final long[] references;
+
+	private ReferenceIndex(List<String> entryNames, Builder builder) {
+		this.entryNames = entryNames;
+		this.classNames = builder.classNames.toArray(new String[0]);
+		this.classIds = builder.classIds;
+		this.memberIds = builder.memberIds;
+		this.classEntries = Arrays.copyOf(builder.classEntries, this.classNames.length);
+		this.interfaces = builder.interfaces;
+		
+		// Both tables are grouped by class with a counting sort
+		int classCount = this.classNames.length;
+		this.subtypeOffsets = new int[classCount + 1];
+		for (int i = 0; i < builder.inheritanceCount; i++)
+			this.subtypeOffsets[builder.inheritance[i * 2 + 1] + 1]++;
+		for (int i = 0; i < classCount; i++)
+			this.subtypeOffsets[i + 1] += this.subtypeOffsets[i];
+		this.subtypes = new int[builder.inheritanceCount];
+		int[] next = Arrays.copyOf(this.subtypeOffsets, classCount);
+		for (int i = 0; i < builder.inheritanceCount; i++)
+			this.subtypes[next[builder.inheritance[i * 2 + 1]]++] = builder.inheritance[i * 2];
+		
+		this.referenceOffsets = new int[classCount + 1];
+		for (int i = 0; i < builder.referenceCount; i++)
+			this.referenceOffsets[builder.references[i * 3 + 1] + 1]++;
+		for (int i = 0; i < classCount; i++)
+			this.referenceOffsets[i + 1] += this.referenceOffsets[i];
+		this.references = new long[builder.referenceCount];
+		next = Arrays.copyOf(this.referenceOffsets, classCount);
+		for (int i = 0; i < builder.referenceCount; i++)
+			this.references[next[builder.references[i * 3 + 1]]++] = (long) builder.references[i * 3 + 2] << 32 | builder.references[i * 3];
+		// Sorted by member and then by class, so the references to a member are one run
+		for (int i = 0; i < classCount; i++)
+			Arrays.sort(this.references, this.referenceOffsets[i], this.referenceOffsets[i + 1]);
+	}
+
+	public static ReferenceIndex build(final FernflowerBridge fernflowerBridge, final File archive, final List<String> entryNames, final DecompileProgress progress) throws InterruptedException {
+		long start = System.currentTimeMillis();
+		// Versioned classes and nested archives are left out, every class is indexed once
+		int[] candidates = new int[entryNames.size()];
+		int candidateCount = 0;
+		for (int i = 0; i < entryNames.size(); i++) {
+			String entryName = entryNames.get(i);
+			if (entryName.endsWith(".class") && !entryName.startsWith("META-INF/") && !entryName.endsWith("module-info.class")
+					&& !entryName.contains(ArchiveManager.NESTED_SEPARATOR))
+				candidates[candidateCount++] = i;
+		}
+		final int[] classEntries = Arrays.copyOf(candidates, candidateCount);
+		
+		// Every worker numbers the names it reads itself, the tables are merged once they are done
+		final AtomicInteger nextChunk = new AtomicInteger();
+		int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), classEntries.length / CHUNK_SIZE + 1));
+		final Builder[] builders = new Builder[threads];
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			final Builder builder = new Builder(classEntries.length / threads + 1);
+			builders[i] = builder;
+			new Thread("Reference Index " + i) {
+				public void run() {
+					try {
+						int chunk;
+						while (!progress.isCancelled() && (chunk = nextChunk.getAndAdd(CHUNK_SIZE)) < classEntries.length) {
+							int end = Math.min(chunk + CHUNK_SIZE, classEntries.length);
+							for (int j = chunk; j < end; j++)
+								read(fernflowerBridge, archive, entryNames, classEntries[j], builder);
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		try {
+			done.await();
+		} catch (InterruptedException exception) {
+			// Workers stop at their next chunk
+			progress.cancel();
+			throw exception;
+		}
+		progress.checkCancelled();
+		
+		for (int i = 1; i < builders.length; i++) {
+			builders[0].merge(builders[i]);
+			builders[i] = null;
+		}
+		ReferenceIndex index = new ReferenceIndex(entryNames, builders[0]);
+		Log.info("Indexed references of " + index.getClassCount() + " classes: " + index.classNames.length + " types, "
+				+ index.references.length + " references in " + (System.currentTimeMillis() - start) + " ms");
+		return index;
+	}
+
+	private static void read(FernflowerBridge fernflowerBridge, File archive, List<String> entryNames, int entry, Builder builder) {
+		String entryName = entryNames.get(entry);
+		try {
+			read(new ConstantPoolReader(fernflowerBridge.getBytecode(archive.getAbsolutePath(), entryName)), entry, builder);
+		} catch (IOException exception) {
+			Log.trace("Could not read constant pool of " + entryName + ": " + exception.getMessage());
+		} catch (RuntimeException exception) {
+			// A malformed class is left out, the rest of the chunk is still indexed
+			Log.warn("Could not index " + entryName + ": " + exception);
+		}
+	}
+
+	private static void read(ConstantPoolReader reader, int entry, Builder builder) {
+		// Access flags, this class, super class and the interfaces follow the constant pool
+		int position = reader.getEnd();
+		if (position + 8 > reader.getBytes().length)
+			return;
+		int interfaceCount = reader.readUnsignedShort(position + 6);
+		if (position + 8 + interfaceCount * 2 > reader.getBytes().length)
+			return;
+		boolean isInterface = (reader.readUnsignedShort(position) & ACC_INTERFACE) != 0;
+		String className = reader.getClassName(reader.readUnsignedShort(position + 2));
+		if (className == null)
+			return;
+		int superIndex = reader.readUnsignedShort(position + 4);
+		String superName = superIndex == 0 ? null : reader.getClassName(superIndex);
+		String[] interfaceNames = new String[interfaceCount];
+		for (int i = 0; i < interfaceCount; i++)
+			interfaceNames[i] = reader.getClassName(reader.readUnsignedShort(position + 8 + i * 2));
+		
+		// Owner and name of every class, field and method reference, null names for classes
+		List<String> owners = new ArrayList<String>();
+		List<String> members = new ArrayList<String>();
+		for (int i = 1; i < reader.getCount(); i++) {
+			int tag = reader.getTag(i);
+			if (tag == ConstantPoolReader.CLASS) {
+				String owner = ConstantPoolReader.getElementType(reader.getClassName(i));
+				if (owner == null)
+					continue;
+				owners.add(owner);
+				members.add(null);
+			} else if (tag == ConstantPoolReader.FIELD_REF || tag == ConstantPoolReader.METHOD_REF || tag == ConstantPoolReader.INTERFACE_METHOD_REF) {
+				String owner = ConstantPoolReader.getElementType(reader.getClassName(reader.getReference(i, 0)));
+				String member = reader.getUtf8(reader.getReference(reader.getReference(i, 1), 0));
+				if (owner == null || member == null)
+					continue;
+				owners.add(owner);
+				members.add(member);
+			}
+		}
+		
+		// Types which only occur in descriptors and signatures are used as well, such as parameter types
+		Set<String> descriptorTypes = reader.getDescriptorTypes();
+		for (String descriptorType : descriptorTypes) {
+			owners.add(descriptorType);
+			members.add(null);
+		}
+		builder.add(entry, className, superName, interfaceNames, isInterface, owners, members);
+	}
+
+	public int getClassId(String className) {
+		Integer id = this.classIds.get(className.replace('.', '/'));
+		return id == null ? -1 : id;
+	}
+
+	public int getEntryClassId(String entryName) {
+		// Entries may sit below a folder such as BOOT-INF/classes/, so each suffix of the path is tried
+		if (!entryName.endsWith(".class"))
+			return -1;
+		String className = entryName.substring(0, entryName.length() - 6);
+		int start = 0;
+		while (true) {
+			Integer id = this.classIds.get(className.substring(start));
+			if (id != null && entryName.equals(this.getEntryName(id)))
+				return id;
+			int separator = className.indexOf('/', start);
+			if (separator == -1)
+				return -1;
+			start = separator + 1;
+		}
+	}
+
+	public int[] getImplementations(int classId) {
+		// Subtypes of subtypes are followed as well, each class is listed once
+		BitSet visited = this.getSubtypes(classId);
+		visited.clear(classId);
+		return this.getArchiveClasses(visited);
+	}
+
+	public int[] getUsages(int classId) {
+		int[] usages = new int[this.referenceOffsets[classId + 1] - this.referenceOffsets[classId]];
+		int count = 0;
+		for (int i = this.referenceOffsets[classId]; i < this.referenceOffsets[classId + 1] && (int) (this.references[i] >>> 32) == CLASS_REFERENCE; i++)
+			usages[count++] = (int) this.references[i];
+		return Arrays.copyOf(usages, count);
+	}
+
+	public int[] getUsages(int classId, String memberName) {
+		Integer memberId = this.memberIds.get(memberName);
+		if (memberId == null)
+			return new int[0];
+		// Inherited members are also referenced through the subtypes
+		BitSet owners = this.getSubtypes(classId);
+		BitSet usages = new BitSet();
+		long key = (long) memberId << 32;
+		for (int owner = owners.nextSetBit(0); owner >= 0; owner = owners.nextSetBit(owner + 1)) {
+			int end = this.referenceOffsets[owner + 1];
+			for (int i = this.findFirst(owner, key); i < end && (int) (this.references[i] >>> 32) == memberId; i++)
+				usages.set((int) this.references[i]);
+		}
+		return this.getArchiveClasses(usages);
+	}
+
+	private BitSet getSubtypes(int classId) {
+		BitSet visited = new BitSet(this.classNames.length);
+		int[] queue = new int[16];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = classId;
+		visited.set(classId);
+		while (head < tail) {
+			int id = queue[head++];
+			for (int i = this.subtypeOffsets[id]; i < this.subtypeOffsets[id + 1]; i++) {
+				int subtype = this.subtypes[i];
+				if (visited.get(subtype))
+					continue;
+				visited.set(subtype);
+				if (tail == queue.length)
+					queue = Arrays.copyOf(queue, tail * 2);
+				queue[tail++] = subtype;
+			}
+		}
+		return visited;
+	}
+
+	private int findFirst(int owner, long key) {
+		// Binary search for the first reference of the owner which is not below the key
+		int low = this.referenceOffsets[owner];
+		int high = this.referenceOffsets[owner + 1];
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (this.references[middle] < key)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	private int[] getArchiveClasses(BitSet classes) {
+		int[] ids = new int[classes.cardinality()];
+		int count = 0;
+		for (int id = classes.nextSetBit(0); id >= 0; id = classes.nextSetBit(id + 1))
+			if (this.classEntries[id] != -1)
+				ids[count++] = id;
+		return Arrays.copyOf(ids, count);
+	}
+
+	public String getClassName(int classId) {
+		return this.classNames[classId];
+	}
+
+	public String getEntryName(int classId) {
+		int entry = this.classEntries[classId];
+		return entry == -1 ? null : this.entryNames.get(entry);
+	}
+
+	public boolean isInterface(int classId) {
+		return this.interfaces.get(classId);
+	}
+
+	public int getClassCount() {
+		int count = 0;
+		for (int entry : this.classEntries)
+			if (entry != -1)
+				count++;
+		return count;
+	}
+
+	private static class Builder {
+
+		private final List<String> classNames;
+		private final Map<String, Integer> classIds;
+		private final Map<String, Integer> memberIds;
+		private final List<String> memberNames;
+		private final BitSet interfaces;
+		private int[] classEntries;
+		// Pairs of subtype and supertype
+		private int[] inheritance;
+		private int inheritanceCount = 0;
+		// Triples of referencing class, owner and member
+		private int[] references;
+		private int referenceCount = 0;
+
+		private Builder(int expected) {
+			this.classNames = new ArrayList<String>(expected * 2);
+			this.classIds = new HashMap<String, Integer>(expected * 4);
+			this.memberIds = new HashMap<String, Integer>();
+			this.memberNames = new ArrayList<String>();
+			this.getMemberId("");
+			this.interfaces = new BitSet();
+			this.classEntries = new int[Math.max(16, expected * 2)];
+			this.inheritance = new int[Math.max(16, expected * 4)];
+			this.references = new int[Math.max(16, expected * 24)];
+		}
+
+		private void add(int entry, String className, String superName, String[] interfaceNames, boolean isInterface,
+				List<String> owners, List<String> members) {
+			int id = this.getClassId(className);
+			if (this.classEntries[id] != -1)
+				return;
+			this.classEntries[id] = entry;
+			if (isInterface)
+				this.interfaces.set(id);
+			if (superName != null)
+				this.addInheritance(id, this.getClassId(superName));
+			for (String interfaceName : interfaceNames)
+				if (interfaceName != null)
+					this.addInheritance(id, this.getClassId(interfaceName));
+			
+			// A member referenced with several descriptors is stored once
+			long[] keys = new long[owners.size()];
+			int count = 0;
+			for (int i = 0; i < keys.length; i++) {
+				int owner = this.getClassId(owners.get(i));
+				int member = members.get(i) == null ? CLASS_REFERENCE : this.getMemberId(members.get(i));
+				// Members of the class itself are used from within, its own name is not
+				if (owner != id || member != CLASS_REFERENCE)
+					keys[count++] = (long) owner << 32 | member;
+			}
+			Arrays.sort(keys, 0, count);
+			for (int i = 0; i < count; i++)
+				if (i == 0 || keys[i] != keys[i - 1])
+					this.addReference(id, (int) (keys[i] >>> 32), (int) keys[i]);
+		}
+
+		private void merge(Builder other) {
+			// Names of the other worker are numbered again in this table
+			int[] classes = new int[other.classNames.size()];
+			for (int i = 0; i < classes.length; i++)
+				classes[i] = this.getClassId(other.classNames.get(i));
+			int[] members = new int[other.memberNames.size()];
+			for (int i = 0; i < members.length; i++)
+				members[i] = this.getMemberId(other.memberNames.get(i));
+			
+			// A class found by two workers, such as a duplicate entry, keeps the first one
+			BitSet duplicates = new BitSet();
+			for (int i = 0; i < classes.length; i++) {
+				if (other.classEntries[i] == -1)
+					continue;
+				if (this.classEntries[classes[i]] != -1) {
+					duplicates.set(i);
+					continue;
+				}
+				this.classEntries[classes[i]] = other.classEntries[i];
+				if (other.interfaces.get(i))
+					this.interfaces.set(classes[i]);
+			}
+			for (int i = 0; i < other.inheritanceCount; i++)
+				if (!duplicates.get(other.inheritance[i * 2]))
+					this.addInheritance(classes[other.inheritance[i * 2]], classes[other.inheritance[i * 2 + 1]]);
+			for (int i = 0; i < other.referenceCount; i++)
+				if (!duplicates.get(other.references[i * 3]))
+					this.addReference(classes[other.references[i * 3]], classes[other.references[i * 3 + 1]], members[other.references[i * 3 + 2]]);
+		}
+
+		private void addReference(int source, int owner, int member) {
+			if (this.referenceCount * 3 + 3 > this.references.length)
+				this.references = Arrays.copyOf(this.references, this.references.length * 2);
+			int slot = this.referenceCount++ * 3;
+			this.references[slot] = source;
+			this.references[slot + 1] = owner;
+			this.references[slot + 2] = member;
+		}
+
+		private void addInheritance(int subtype, int supertype) {
+			if (this.inheritanceCount * 2 + 2 > this.inheritance.length)
+				this.inheritance = Arrays.copyOf(this.inheritance, this.inheritance.length * 2);
+			this.inheritance[this.inheritanceCount * 2] = subtype;
+			this.inheritance[this.inheritanceCount * 2 + 1] = supertype;
+			this.inheritanceCount++;
+		}
+
+		private int getClassId(String className) {
+			Integer id = this.classIds.get(className);
+			if (id != null)
+				return id;
+			int created = this.classNames.size();
+			this.classNames.add(className);
+			this.classIds.put(className, created);
+			if (created == this.classEntries.length)
+				this.classEntries = Arrays.copyOf(this.classEntries, created * 2);
+			this.classEntries[created] = -1;
+			return created;
+		}
+
+		private int getMemberId(String memberName) {
+			Integer id = this.memberIds.get(memberName);
+			if (id != null)
+				return id;
+			int created = this.memberNames.size();
+			this.memberNames.add(memberName);
+			this.memberIds.put(memberName, created);
+			return created;
+		}
+
+	}
+
+}
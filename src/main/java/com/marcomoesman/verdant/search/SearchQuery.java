@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+public class SearchQuery {
+
+	// Matched lines are cut to this length in the results
+	private static final int MAX_LINE_LENGTH = 200;
+
+	private final String text;
+	private final boolean regex;
+	private final Pattern pattern;
+	private final List<String> literals;
+
+	public SearchQuery(String text, boolean regex, boolean matchCase) throws PatternSyntaxException {
+		this.text = text;
+		this.regex = regex;
+		int flags = (regex ? 0 : Pattern.LITERAL) | (matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+		this.pattern = Pattern.compile(text, flags);
+		this.literals = regex ? getRequiredLiterals(text) : Collections.singletonList(text);
+	}
+
+	public int findMatches(String sourceName, String content, List<SearchResult> results, int limit) {
+		int found = 0;
+		int line = 1;
+		int lineStart = 0;
+		int position = 0;
+		Matcher matcher = this.pattern.matcher(content);
+		while (found < limit && position <= content.length() && matcher.find(position)) {
+			// Line numbers are counted from the previous match onwards
+			for (int i = lineStart; i < matcher.start(); i++) {
+				if (content.charAt(i) == '\n') {
+					line++;
+					lineStart = i + 1;
+				}
+			}
+			int lineEnd = content.indexOf('\n', matcher.start());
+			if (lineEnd == -1)
+				lineEnd = content.length();
+			String lineText = content.substring(lineStart, lineEnd).trim();
+			if (lineText.length() > MAX_LINE_LENGTH)
+				lineText = lineText.substring(0, MAX_LINE_LENGTH) + "...";
+			results.add(new SearchResult(sourceName, line, lineText));
+			found++;
+			// One result per line
+			position = Math.max(lineEnd + 1, matcher.end());
+		}
+		return found;
+	}
+
+	static List<String> getRequiredLiterals(String regex) {
+		// Runs of plain characters outside of groups, classes and alternations, anything
+		// that is not understood makes the run end so candidates are never missed
+		List<String> literals = new ArrayList<String>();
+		StringBuilder run = new StringBuilder();
+		int i = 0;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			if (c == '\\' && i + 1 < regex.length()) {
+				char escaped = regex.charAt(i + 1);
+				if (escaped == 'Q') {
+					int end = regex.indexOf("\\E", i + 2);
+					if (end == -1)
+						end = regex.length();
+					run.append(regex, i + 2, end);
+					i = end + 2;
+				} else if (Character.isLetterOrDigit(escaped)) {
+					addLiteral(literals, run);
+					i = skipEscape(regex, i);
+				} else {
+					run.append(escaped);
+					i += 2;
+				}
+			} else if (c == '[') {
+				addLiteral(literals, run);
+				i = skipClass(regex, i);
+			} else if (c == '(') {
+				// Flags such as (?x) change how the rest of the pattern reads
+				if (regex.startsWith("(?", i) && hasCommentsFlag(regex, i + 2))
+					return Collections.emptyList();
+				addLiteral(literals, run);
+				i = skipGroup(regex, i);
+			} else if (c == '|') {
+				return Collections.emptyList();
+			} else if (c == '*' || c == '?' || c == '{') {
+				// The character before is optional
+				if (run.length() > 0)
+					run.setLength(run.length() - 1);
+				addLiteral(literals, run);
+				i = c == '{' ? Math.max(i + 1, regex.indexOf('}', i) + 1) : i + 1;
+			} else if (c == '+' || c == '.' || c == '^' || c == '$') {
+				addLiteral(literals, run);
+				i++;
+			} else {
+				run.append(c);
+				i++;
+			}
+		}
+		addLiteral(literals, run);
+		return literals;
+	}
+
+	private static void addLiteral(List<String> literals, StringBuilder run) {
+		if (run.length() >= 3)
+			literals.add(run.toString());
+		run.setLength(0);
+	}
+
+	private static boolean hasCommentsFlag(String regex, int start) {
+		for (int i = start; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == 'x')
+				return true;
+			if (!Character.isLetter(c) && c != '-')
+				return false;
+		}
+		return false;
+	}
+
+	private static int skipEscape(String regex, int start) {
+		// Character classes, code points and back references, such as \d, \x{41} or \p{Lu}
+		int i = start + 2;
+		char escaped = regex.charAt(start + 1);
+		if (i < regex.length() && regex.charAt(i) == '{' && "xpPN".indexOf(escaped) != -1)
+			return Math.max(i + 1, regex.indexOf('}', i) + 1);
+		if (escaped == 'k' && i < regex.length() && regex.charAt(i) == '<')
+			return Math.max(i + 1, regex.indexOf('>', i) + 1);
+		int length = escaped == 'x' ? 2 : escaped == 'u' ? 4 : escaped == 'c' || escaped == 'p' || escaped == 'P' ? 1 : 0;
+		if (Character.isDigit(escaped)) {
+			while (i < regex.length() && Character.isDigit(regex.charAt(i)))
+				i++;
+			return i;
+		}
+		return Math.min(regex.length(), i + length);
+	}
+
+	private static int skipClass(String regex, int start) {
+		int depth = 0;
+		for (int i = start; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				depth++;
+				// A closing bracket right after the opening one is a member
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == ']')
+					i++;
+				else if (i + 2 < regex.length() && regex.charAt(i + 1) == '^' && regex.charAt(i + 2) == ']')
+					i += 2;
+			} else if (c == ']' && --depth == 0) {
+				return i + 1;
+			}
+		}
+		return regex.length();
+	}
+
+	private static int skipGroup(String regex, int start) {
+		int depth = 0;
+		for (int i = start; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				i = skipClass(regex, i) - 1;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')' && --depth == 0) {
+				return i + 1;
+			}
+		}
+		return regex.length();
+	}
+
+	public String getText() {
+		return this.text;
+	}
+
+	public boolean isRegex() {
+		return this.regex;
+	}
+
+	public List<String> getLiterals() {
+		return this.literals;
+	}
+
+}
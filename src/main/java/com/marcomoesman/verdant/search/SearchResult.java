@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.search;
+
+public class SearchResult {
+
+	private final String sourceName;
+	private final int line;
+	private final String text;
+
+	public SearchResult(String sourceName, int line, String text) {
+		this.sourceName = sourceName;
+		this.line = line;
+		this.text = text;
+	}
+
+	public String getSourceName() {
+		return this.sourceName;
+	}
+
+	public int getLine() {
+		return this.line;
+	}
+
+	public String getText() {
+		return this.text;
+	}
+
+	@Override
+	public String toString() {
+		// Constant pool matches have no line
+		if (this.line <= 0)
+			return this.sourceName + ": " + this.text;
+		return this.sourceName + ":" + this.line + ": " + this.text;
+	}
+
+}
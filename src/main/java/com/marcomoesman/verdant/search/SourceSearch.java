@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.marcomoesman.verdant.fernflower.FFDecompiledClass;
+import com.marcomoesman.verdant.fernflower.ResultStore;
+
+public class SourceSearch implements ArchiveSearch {
+
+	public static final int MAX_RESULTS = 5000;
+
+	private final TrigramIndex index;
+	private final ResultStore resultStore;
+	private final SearchQuery query;
+	private volatile boolean cancelled = false;
+
+	public SourceSearch(TrigramIndex index, ResultStore resultStore, SearchQuery query) {
+		this.index = index;
+		this.resultStore = resultStore;
+		this.query = query;
+	}
+
+	@Override
+	public void run(SearchListener listener) {
+		long start = System.currentTimeMillis();
+		int[] candidates = this.index.getCandidates(this.query.getLiterals());
+		int found = 0;
+		int matchedSources = 0;
+		for (int id : candidates) {
+			if (this.cancelled || found >= MAX_RESULTS)
+				break;
+			String sourceName = this.index.getSourceName(id);
+			FFDecompiledClass decompiledClass = this.resultStore.get(sourceName);
+			if (decompiledClass == null || decompiledClass.getContent() == null)
+				continue;
+			
+			List<SearchResult> results = new ArrayList<SearchResult>();
+			found += this.query.findMatches(sourceName, decompiledClass.getContent(), results, MAX_RESULTS - found);
+			if (!results.isEmpty()) {
+				matchedSources++;
+				listener.found(results);
+			}
+		}
+		listener.finished(found, matchedSources, candidates.length, this.index.size(), System.currentTimeMillis() - start);
+	}
+
+	@Override
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	public SearchQuery getQuery() {
+		return this.query;
+	}
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TrigramIndex {
+
+	private final List<String> sourceNames;
+	private final Map<String, Integer> sourceIds;
+	// Sources which were added again, their old postings are skipped
+	private final BitSet removed;
+	// Open addressing table of trigrams, each with the ids of the sources it occurs in
+	private long[] trigrams;
+	private Postings[] postings;
+	private int trigramCount = 0;
+
+	public TrigramIndex() {
+		this.sourceNames = new ArrayList<String>();
+		this.sourceIds = new HashMap<String, Integer>();
+		this.removed = new BitSet();
+		this.trigrams = new long[1 << 14];
+		this.postings = new Postings[1 << 14];
+	}
+
+	public void add(String sourceName, String content) {
+		// Trigrams are collected outside of the lock, workers only contend on the postings
+		long[] sourceTrigrams = getTrigrams(content);
+		synchronized (this) {
+			Integer previous = this.sourceIds.get(sourceName);
+			if (previous != null)
+				this.removed.set(previous);
+			int id = this.sourceNames.size();
+			this.sourceNames.add(sourceName);
+			this.sourceIds.put(sourceName, id);
+			for (long trigram : sourceTrigrams)
+				this.getPostings(trigram, true).add(id);
+		}
+	}
+
+	public synchronized int[] getCandidates(Collection<String> literals) {
+		List<Postings> required = new ArrayList<Postings>();
+		for (String literal : literals) {
+			for (long trigram : getTrigrams(literal)) {
+				Postings trigramPostings = this.getPostings(trigram, false);
+				if (trigramPostings == null)
+					return new int[0];
+				required.add(trigramPostings);
+			}
+		}
+
+		int[] candidates;
+		if (required.isEmpty()) {
+			// Literals shorter than a trigram can not narrow the search
+			candidates = new int[this.sourceNames.size()];
+			for (int i = 0; i < candidates.length; i++)
+				candidates[i] = i;
+		} else {
+			// Rarest trigram first, so the intersections only get smaller
+			Collections.sort(required, new Comparator<Postings>() {
+				public int compare(Postings o1, Postings o2) {
+					return Integer.compare(o1.count, o2.count);
+				}
+			});
+			candidates = required.get(0).toArray();
+			for (int i = 1; i < required.size() && candidates.length > 0; i++)
+				candidates = intersect(candidates, required.get(i).toArray());
+		}
+
+		int count = 0;
+		for (int id : candidates)
+			if (!this.removed.get(id))
+				candidates[count++] = id;
+		return Arrays.copyOf(candidates, count);
+	}
+
+	public synchronized String getSourceName(int id) {
+		return this.sourceNames.get(id);
+	}
+
+	public synchronized int size() {
+		return this.sourceIds.size();
+	}
+
+	public synchronized void clear() {
+		this.sourceNames.clear();
+		this.sourceIds.clear();
+		this.removed.clear();
+		this.trigrams = new long[1 << 14];
+		this.postings = new Postings[1 << 14];
+		this.trigramCount = 0;
+	}
+
+	private Postings getPostings(long trigram, boolean create) {
+		int mask = this.trigrams.length - 1;
+		int slot = hash(trigram) & mask;
+		while (this.postings[slot] != null) {
+			if (this.trigrams[slot] == trigram)
+				return this.postings[slot];
+			slot = (slot + 1) & mask;
+		}
+		if (!create)
+			return null;
+
+		Postings created = new Postings();
+		this.trigrams[slot] = trigram;
+		this.postings[slot] = created;
+		if (++this.trigramCount * 2 > this.trigrams.length)
+			this.grow();
+		return created;
+	}
+
+	private void grow() {
+		long[] oldTrigrams = this.trigrams;
+		Postings[] oldPostings = this.postings;
+		this.trigrams = new long[oldTrigrams.length * 2];
+		this.postings = new Postings[oldPostings.length * 2];
+		int mask = this.trigrams.length - 1;
+		for (int i = 0; i < oldPostings.length; i++) {
+			if (oldPostings[i] == null)
+				continue;
+			int slot = hash(oldTrigrams[i]) & mask;
+			while (this.postings[slot] != null)
+				slot = (slot + 1) & mask;
+			this.trigrams[slot] = oldTrigrams[i];
+			this.postings[slot] = oldPostings[i];
+		}
+	}
+
+	private static int hash(long trigram) {
+		long hash = trigram * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	static long[] getTrigrams(String text) {
+		if (text.length() < 3)
+			return new long[0];
+		// Distinct trigrams are collected in an open addressing set, stored plus one so zero is free
+		long[] set = new long[1024];
+		int count = 0;
+		long window = (long) fold(text.charAt(0)) << 16 | fold(text.charAt(1));
+		for (int i = 2; i < text.length(); i++) {
+			window = (window << 16 | fold(text.charAt(i))) & 0xFFFFFFFFFFFFL;
+			int mask = set.length - 1;
+			int slot = hash(window) & mask;
+			while (set[slot] != 0 && set[slot] != window + 1)
+				slot = (slot + 1) & mask;
+			if (set[slot] != 0)
+				continue;
+			set[slot] = window + 1;
+			if (++count * 2 > set.length)
+				set = rehash(set);
+		}
+
+		long[] trigrams = new long[count];
+		int position = 0;
+		for (long entry : set)
+			if (entry != 0)
+				trigrams[position++] = entry - 1;
+		return trigrams;
+	}
+
+	private static long[] rehash(long[] set) {
+		long[] grown = new long[set.length * 2];
+		int mask = grown.length - 1;
+		for (long entry : set) {
+			if (entry == 0)
+				continue;
+			int slot = hash(entry - 1) & mask;
+			while (grown[slot] != 0)
+				slot = (slot + 1) & mask;
+			grown[slot] = entry;
+		}
+		return grown;
+	}
+
+	private static char fold(char c) {
+		if (c < 128)
+			return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+		return Character.toLowerCase(c);
+	}
+
+	private static int[] intersect(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[count++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	private static class Postings {
+
+		// Ascending source ids, stored as variable length deltas
+		private byte[] data = new byte[4];
+		private int length = 0;
+		private int last = 0;
+		private int count = 0;
+
+		private void add(int id) {
+			if (this.length + 5 > this.data.length)
+				this.data = Arrays.copyOf(this.data, this.data.length * 2);
+			int delta = id - this.last;
+			while ((delta & ~0x7F) != 0) {
+				this.data[this.length++] = (byte) ((delta & 0x7F) | 0x80);
+				delta >>>= 7;
+			}
+			this.data[this.length++] = (byte) delta;
+			this.last = id;
+			this.count++;
+		}
+
+		private int[] toArray() {
+			int[] ids = new int[this.count];
+			int position = 0;
+			int id = 0;
+			for (int i = 0; i < this.count; i++) {
+				int delta = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = this.data[position++];
+					delta |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				id += delta;
+				ids[i] = id;
+			}
+			return ids;
+		}
+
+	}
+
+}
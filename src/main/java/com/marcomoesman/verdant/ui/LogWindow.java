@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
+
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+
+import org.jetbrains.java.decompiler.main.extern.IFernflowerLogger.Severity;
+
+import com.alee.laf.button.WebButton;
+import com.alee.laf.combobox.WebComboBox;
+import com.alee.laf.label.WebLabel;
+import com.alee.laf.scroll.WebScrollPane;
+import com.alee.laf.text.WebTextArea;
+import com.marcomoesman.verdant.log.Log;
+
+public class LogWindow extends JDialog {
+
+	/**
+	 * Serial Version UID
+	 */
+	private static final long serialVersionUID = 4105866312718954043L;
+
+	private final WebTextArea textArea;
+	private final javax.swing.Timer refreshTimer;
+	private long shownLines = -1;
+
+	public LogWindow(JFrame owner) {
+		super(owner, "Log", false);
+		
+		this.textArea = new WebTextArea();
+		this.textArea.setEditable(false);
+		this.textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		this.getContentPane().add(new WebScrollPane(this.textArea), BorderLayout.CENTER);
+		
+		final WebComboBox levelBox = new WebComboBox(Severity.values(), Log.getLevel());
+		levelBox.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				Log.setLevel((Severity) levelBox.getSelectedItem());
+			}
+		});
+		WebButton clearButton = new WebButton("Clear");
+		clearButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				Log.getBuffer().clear();
+				LogWindow.this.refresh();
+			}
+		});
+		JPanel controls = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+		controls.add(new WebLabel("Level"));
+		controls.add(levelBox);
+		controls.add(clearButton);
+		this.getContentPane().add(controls, BorderLayout.SOUTH);
+		
+		// Poll the buffer, the log writer never touches the EDT
+		this.refreshTimer = new javax.swing.Timer(500, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				LogWindow.this.refresh();
+			}
+		});
+		this.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowOpened(WindowEvent e) {
+				LogWindow.this.refreshTimer.start();
+			}
+
+			@Override
+			public void windowClosed(WindowEvent e) {
+				LogWindow.this.refreshTimer.stop();
+			}
+		});
+		
+		this.setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		this.setPreferredSize(new Dimension(900, 450));
+		this.pack();
+		this.setLocationRelativeTo(owner);
+		this.refresh();
+	}
+
+	private void refresh() {
+		long written = Log.getBuffer().getWritten();
+		if (written == this.shownLines)
+			return;
+		this.shownLines = written;
+		
+		List<String> lines = Log.getBuffer().getLines();
+		StringBuilder text = new StringBuilder();
+		for (String line : lines)
+			text.append(line).append('\n');
+		this.textArea.setText(text.toString());
+		this.textArea.setCaretPosition(this.textArea.getDocument().getLength());
+	}
+
+}
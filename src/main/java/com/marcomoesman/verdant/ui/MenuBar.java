@@ -27,6 +27,7 @@ import java.awt.Font;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.io.IOException;
@@ -40,10 +41,12 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.KeyStroke;
 
+import com.alee.laf.menu.WebCheckBoxMenuItem;
 import com.alee.laf.menu.WebMenu;
 import com.alee.laf.menu.WebMenuBar;
 import com.alee.laf.menu.WebMenuItem;
 import com.marcomoesman.verdant.Verdant;
+import com.marcomoesman.verdant.log.Log;
 import com.marcomoesman.verdant.ui.util.LinkMouseAdapter;
 
 public class MenuBar extends WebMenuBar {
@@ -62,20 +65,70 @@ public class MenuBar extends WebMenuBar {
 		this.createFileMenu(fileMenu);
 		this.add(fileMenu);
 		
+		final WebMenu searchMenu = new WebMenu("Search");
+		this.createSearchMenu(searchMenu);
+		this.add(searchMenu);
+		
 		final WebMenu helpMenu = new WebMenu("Help");
 		this.createHelpMenu(helpMenu);
 		this.add(helpMenu);
 	}
 
+	private void createSearchMenu(WebMenu searchMenu) {
+		JMenuItem menuItem = new WebMenuItem("Find in Archive");
+		menuItem.setAccelerator(
+				KeyStroke.getKeyStroke(KeyEvent.VK_F, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask() | InputEvent.SHIFT_DOWN_MASK));
+		menuItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				userInterface.showSearch();
+			}
+		});
+		searchMenu.add(menuItem);
+		searchMenu.addSeparator();
+		
+		// Both act on the class of the selected tab, or on the name selected in it
+		menuItem = new WebMenuItem("Find Usages");
+		menuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F7, InputEvent.ALT_DOWN_MASK));
+		menuItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				userInterface.findUsages();
+			}
+		});
+		searchMenu.add(menuItem);
+		
+		menuItem = new WebMenuItem("Find Implementations");
+		menuItem.setAccelerator(
+				KeyStroke.getKeyStroke(KeyEvent.VK_B, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask() | InputEvent.ALT_DOWN_MASK));
+		menuItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				userInterface.findImplementations();
+			}
+		});
+		searchMenu.add(menuItem);
+	}
+
 	private void createHelpMenu(WebMenu helpMenu) {
-		JMenuItem menuItem = new WebMenuItem("Report issue");
+		JMenuItem menuItem = new WebMenuItem("Show Log");
+		menuItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				userInterface.showLog();
+			}
+		});
+		helpMenu.add(menuItem);
+		helpMenu.addSeparator();
+		
+		menuItem = new WebMenuItem("Report issue");
 		menuItem.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				try {
 					Desktop.getDesktop().browse(new URL("https://github.com/marcomoesman/Verdant/issues").toURI());
 				} catch (IOException | URISyntaxException ex) {
-					ex.printStackTrace();
+					Log.error("Could not open the issue tracker", ex);
 				}
 			}
 		});
@@ -89,7 +142,7 @@ public class MenuBar extends WebMenuBar {
 				try {
 					Desktop.getDesktop().browse(new URL("https://github.com/marcomoesman/Verdant/blob/master/LICENSE").toURI());
 				} catch (IOException | URISyntaxException ex) {
-					ex.printStackTrace();
+					Log.error("Could not open the license", ex);
 				}
 			}
 		});
@@ -146,13 +199,13 @@ public class MenuBar extends WebMenuBar {
 		menuItem.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				FileChooserInterface fileChooser = FileChooserInterface.create("*.jar", "*.zip", "*.class");
+				FileChooserInterface fileChooser = FileChooserInterface.create("*.jar", "*.war", "*.zip", "*.class");
 				File file = fileChooser.show(userInterface);
 				if (file == null) {
 					return;
 				}
 				
-				System.out.println("Opening file: " + file.getName());
+				Log.info("Opening file: " + file.getName());
 				userInterface.openFile(file);
 			}
 		});
@@ -169,6 +222,67 @@ public class MenuBar extends WebMenuBar {
 		});
 		fileMenu.add(menuItem);
 		fileMenu.addSeparator();
+		
+		menuItem = new WebMenuItem("Add Library");
+		menuItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				FileChooserInterface fileChooser = FileChooserInterface.create("*.jar", "*.zip");
+				File file = fileChooser.show(userInterface);
+				if (file == null) {
+					return;
+				}
+				
+				Log.info("Adding library: " + file.getName());
+				userInterface.addLibrary(file);
+			}
+		});
+		fileMenu.add(menuItem);
+		
+		menuItem = new WebMenuItem("Clear Libraries");
+		menuItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				userInterface.clearLibraries();
+			}
+		});
+		fileMenu.add(menuItem);
+		fileMenu.addSeparator();
+		
+		menuItem = new WebMenuItem("Cancel Decompilation");
+		menuItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				userInterface.cancelDecompilation();
+			}
+		});
+		fileMenu.add(menuItem);
+		
+		final WebCheckBoxMenuItem lazyItem = new WebCheckBoxMenuItem("Decompile on demand", true);
+		lazyItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				userInterface.setLazyDecompilation(lazyItem.isSelected());
+			}
+		});
+		fileMenu.add(lazyItem);
+		
+		menuItem = new WebMenuItem("Open Editors Limit");
+		menuItem.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				String limit = JOptionPane.showInputDialog(userInterface, "Editors kept open, older tabs are reloaded when selected",
+						userInterface.getMaxEditors());
+				if (limit == null)
+					return;
+				try {
+					userInterface.setMaxEditors(Integer.parseInt(limit.trim()));
+				} catch (NumberFormatException exception) {
+					Log.warn("Invalid editor limit: " + limit);
+				}
+			}
+		});
+		fileMenu.add(menuItem);
 	}
 	
 }
@@ -24,23 +24,22 @@ package com.marcomoesman.verdant.ui;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.jar.JarEntry;
+import java.util.concurrent.CancellationException;
 import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.MutableTreeNode;
@@ -48,8 +47,6 @@ import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 
 import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
-import org.fife.ui.rtextarea.RTextArea;
-import org.fife.ui.rtextarea.RTextScrollPane;
 import org.jetbrains.java.decompiler.main.Fernflower;
 
 import com.alee.laf.panel.WebPanel;
@@ -58,11 +55,38 @@ import com.alee.laf.tabbedpane.WebTabbedPane;
 import com.alee.laf.tree.WebTree;
 import com.alee.managers.notification.NotificationIcon;
 import com.alee.managers.notification.NotificationManager;
+import com.marcomoesman.verdant.fernflower.ClassStructureCache;
+import com.marcomoesman.verdant.fernflower.CompactResultStore;
+import com.marcomoesman.verdant.fernflower.DecompileCache;
+import com.marcomoesman.verdant.fernflower.DecompileProgress;
+import com.marcomoesman.verdant.fernflower.DecompileScheduler;
+import com.marcomoesman.verdant.fernflower.DecompileWatchdog;
+import com.marcomoesman.verdant.fernflower.FFDecompiledClass;
 import com.marcomoesman.verdant.fernflower.FernflowerBridge;
+import com.marcomoesman.verdant.fernflower.IncrementalDecompiler;
+import com.marcomoesman.verdant.fernflower.LazyDecompiler;
+import com.marcomoesman.verdant.fernflower.MappedBytecodeProvider;
+import com.marcomoesman.verdant.fernflower.Workspace;
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.search.ConstantPoolSearch;
+import com.marcomoesman.verdant.search.ReferenceIndex;
+import com.marcomoesman.verdant.search.SearchQuery;
+import com.marcomoesman.verdant.search.SourceSearch;
+import com.marcomoesman.verdant.search.TrigramIndex;
+import com.marcomoesman.verdant.ui.util.ArchiveTreeIndex;
+import com.marcomoesman.verdant.ui.util.ArchiveTreeModel;
+import com.marcomoesman.verdant.ui.util.ArchiveTreeNode;
+import com.marcomoesman.verdant.ui.util.CodeTabManager;
+import com.marcomoesman.verdant.ui.util.NestedArchiveListener;
+import com.marcomoesman.verdant.ui.util.NestedArchiveUserObject;
 import com.marcomoesman.verdant.ui.util.ProjectTreeCellRenderer;
 import com.marcomoesman.verdant.ui.util.TreeNodeUserObject;
 import com.marcomoesman.verdant.ui.util.TreeObjectListener;
+import com.marcomoesman.verdant.util.ArchiveIndexCache;
+import com.marcomoesman.verdant.util.ArchiveManager;
+import com.marcomoesman.verdant.util.ArchiveSnapshot;
 import com.marcomoesman.verdant.util.JarEntryUtility;
+import com.marcomoesman.verdant.util.MappedArchive;
 
 public class ProjectWindow extends WebSplitPane {
 
@@ -70,22 +94,39 @@ public class ProjectWindow extends WebSplitPane {
 	 * Serial Version UID
 	 */
 	private static final long serialVersionUID = 6031514830871949070L;
-
+	
+	// Archives of at least this size are read through a memory mapping
+	private static final long MAPPED_ARCHIVE_SIZE = 32L * 1024L * 1024L;
+	
 	private final UserInterface userInterface;
 	private final WebTree<MutableTreeNode> fileTree; 
 	private final WebTabbedPane codeTabbedPane;
+	private final CodeTabManager codeTabs;
+	private final DecompileCache decompileCache;
+	private final ArchiveIndexCache indexCache;
+	private final Workspace workspace;
 	
-	private File loadedFile = null;
-	private FernflowerBridge fernflowerBridge = null;
+	private volatile File loadedFile = null;
+	private volatile FernflowerBridge fernflowerBridge = null;
+	private volatile DecompileProgress decompileProgress = null;
+	private volatile DecompileScheduler decompileScheduler = null;
+	private volatile ArchiveSnapshot archiveSnapshot = null;
+	private volatile DecompileProgress referenceProgress = null;
+	private volatile ReferenceIndex referenceIndex = null;
+	private volatile boolean lazyDecompilation = true;
 	
 	public ProjectWindow(UserInterface userInterface) {
 		this.userInterface = userInterface;
+		this.decompileCache = new DecompileCache(new File(System.getProperty("user.home"), ".verdant" + File.separator + "cache"), 512L * 1024L * 1024L);
+		this.indexCache = new ArchiveIndexCache(new File(System.getProperty("user.home"), ".verdant" + File.separator + "indexes"));
+		this.workspace = new Workspace(new ClassStructureCache(new File(System.getProperty("user.home"), ".verdant" + File.separator + "structures")));
 		
 		this.fileTree = new WebTree<MutableTreeNode>();
 		this.fileTree.setModel(new DefaultTreeModel(null));
 		this.fileTree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
 		this.fileTree.setCellRenderer(new ProjectTreeCellRenderer());
 		this.fileTree.addMouseListener(new TreeObjectListener(this));
+		this.fileTree.addTreeWillExpandListener(new NestedArchiveListener(this));
 		
 		WebPanel projectPanel = new WebPanel();
 		projectPanel.setLayout(new BoxLayout(projectPanel, 1));
@@ -94,6 +135,8 @@ public class ProjectWindow extends WebSplitPane {
 		
 		this.codeTabbedPane = new WebTabbedPane();
 		this.codeTabbedPane.setTabLayoutPolicy(WebTabbedPane.SCROLL_TAB_LAYOUT);
+		// Each entry gets one tab, only the recently selected ones keep their editor
+		this.codeTabs = new CodeTabManager(this, this.codeTabbedPane, CodeTabManager.DEFAULT_MAX_EDITORS);
 		
 		WebPanel codePanel = new WebPanel();
 		codePanel.setLayout(new BoxLayout(codePanel, 1));
@@ -106,119 +149,403 @@ public class ProjectWindow extends WebSplitPane {
 		this.setRightComponent(codePanel);
 	}
 
-	public void openFile(File file) {
-		if (this.loadedFile != null)
-			this.closeFile();
+	public void openFile(final File file) {
+		// A new build of the open archive keeps the results of unchanged classes
+		FernflowerBridge previousBridge = null;
+		ArchiveSnapshot previousSnapshot = null;
+		if (this.loadedFile != null) {
+			if (this.isArchive(file) && file.getName().equals(this.loadedFile.getName()) && this.archiveSnapshot != null) {
+				previousBridge = this.fernflowerBridge;
+				previousSnapshot = this.archiveSnapshot;
+			}
+			this.closeFile(previousBridge != null);
+		}
+		final IncrementalDecompiler incrementalDecompiler = previousBridge == null ? null
+				: new IncrementalDecompiler(previousSnapshot, previousBridge.getResultStore());
+		final FernflowerBridge releasedBridge = previousBridge;
+		
+		// Keep decompiled sources within a quarter of the heap, colder ones spill to disk
+		final FernflowerBridge fernflowerBridge = new FernflowerBridge(new CompactResultStore(Runtime.getRuntime().maxMemory() / 4, true, true), new ArchiveManager());
+		fernflowerBridge.setCache(this.decompileCache);
+		// Archives opened before are listed from their index file
+		fernflowerBridge.getArchiveManager().setIndexCache(this.indexCache);
+		fernflowerBridge.setSearchIndex(new TrigramIndex());
+		// Classes that run out of time are shown as stubs, the rest of the archive goes on
+		DecompileWatchdog watchdog = new DecompileWatchdog();
+		watchdog.apply(fernflowerBridge.getOptions());
+		fernflowerBridge.setWatchdog(watchdog);
+		final DecompileProgress progress = new DecompileProgress();
 		
 		this.loadedFile = file;
-		this.fernflowerBridge = new FernflowerBridge();
-		Fernflower fernflower = new Fernflower(fernflowerBridge, fernflowerBridge, new HashMap<String, Object>(), fernflowerBridge);
-		fernflower.addSource(this.loadedFile);
-		fernflower.decompileContext();
-		this.updateFileTree(file);
+		this.fernflowerBridge = fernflowerBridge;
+		this.decompileProgress = progress;
+		this.userInterface.showProgress(progress);
+		
+		// Decompile in the background, a later open cancels this job
+		new Thread("Decompiler") {
+			public void run() {
+				try {
+					ProjectWindow.this.decompile(file, fernflowerBridge, progress, incrementalDecompiler);
+				} catch (CancellationException exception) {
+					showNotification(progress, "Decompilation cancelled", false);
+				} catch (Exception exception) {
+					Log.error("Could not decompile " + file.getName(), exception);
+					showNotification(progress, "An error occurred", true);
+				} finally {
+					progress.finish();
+					if (releasedBridge != null)
+						releasedBridge.cleanup();
+				}
+			}
+		}.start();
+	}
+
+	private void decompile(File file, FernflowerBridge fernflowerBridge, final DecompileProgress progress, IncrementalDecompiler incrementalDecompiler) throws IOException, InterruptedException {
+		if (!this.isArchive(file)) {
+			Fernflower fernflower = new Fernflower(fernflowerBridge, fernflowerBridge, fernflowerBridge.getOptions(), fernflowerBridge);
+			try {
+				fernflower.addSource(file);
+				fernflower.decompileContext();
+			} finally {
+				fernflower.clearContext();
+			}
+			this.showFileTree(progress, this.createFileTree(file, fernflowerBridge.getArchiveManager()), null);
+			this.showNotification(progress, "Decompiling complete!", false);
+			return;
+		}
+		
+		if (file.length() >= MAPPED_ARCHIVE_SIZE) {
+			MappedBytecodeProvider bytecodeProvider = new MappedBytecodeProvider();
+			try {
+				bytecodeProvider.getArchive(file);
+				fernflowerBridge.setBytecodeProvider(bytecodeProvider);
+			} catch (IOException exception) {
+				// Archives which can not be mapped, such as ones over 2 GiB, are read through the ArchiveManager
+				Log.warn("Could not map " + file.getName() + ": " + exception.getMessage());
+			}
+		}
+		
+		// Index the archive first, so classes can be opened while the rest is decompiled
+		final DecompileScheduler decompileScheduler = new DecompileScheduler(file, fernflowerBridge, new LazyDecompiler(file, fernflowerBridge));
+		final DefaultTreeModel treeModel = this.createFileTree(file, fernflowerBridge.getArchiveManager());
+		final ArchiveSnapshot snapshot = ArchiveSnapshot.create(fernflowerBridge.getArchiveManager().getEntryIndex(file));
+		Set<String> changedClasses = null;
+		if (incrementalDecompiler != null) {
+			changedClasses = incrementalDecompiler.update(file, fernflowerBridge, snapshot);
+			Log.info("Incremental update: " + changedClasses.size() + " changed or dependent classes");
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (progress != ProjectWindow.this.decompileProgress) {
+					decompileScheduler.shutdown();
+					return;
+				}
+				ProjectWindow.this.decompileScheduler = decompileScheduler;
+				ProjectWindow.this.archiveSnapshot = snapshot;
+			}
+		});
+		this.showFileTree(progress, treeModel, changedClasses);
+		try {
+			// Class structures of the archive and the workspace libraries are shared by all decompiles
+			fernflowerBridge.setArchiveContext(this.workspace.getArchiveContext(file, fernflowerBridge.getArchiveManager()));
+			fernflowerBridge.setLibraries(this.workspace.getLibraryContext(file));
+		} catch (IOException exception) {
+			// The archive itself is read as context instead
+			Log.warn("Could not read class structures: " + exception.getMessage());
+		}
+		this.indexReferences(file, fernflowerBridge, progress);
+		if (!this.lazyDecompilation) {
+			// Decompile the whole archive, opened classes and their neighbours are moved ahead
+			decompileScheduler.decompile(progress);
+			List<DecompileWatchdog.Timeout> timeouts = fernflowerBridge.getWatchdog().getTimeouts();
+			if (!timeouts.isEmpty()) {
+				Log.warn(fernflowerBridge.getWatchdog().getReport());
+				this.showNotification(progress, "Decompiling complete, " + timeouts.size() + " timeouts", false);
+			} else {
+				this.showNotification(progress, "Decompiling complete!", false);
+			}
+		} else {
+			this.showNotification(progress, "Indexing complete!", false);
+		}
+	}
+
+	private void indexReferences(final File file, final FernflowerBridge fernflowerBridge, final DecompileProgress progress) throws IOException {
+		if (progress.isCancelled())
+			return;
+		// Usages and implementations are indexed next to the decompilation, cancelling it leaves the index alone
+		final List<String> entryNames = fernflowerBridge.getArchiveManager().getEntryIndex(file).getEntryNames();
+		final DecompileProgress referenceProgress = new DecompileProgress();
+		this.referenceProgress = referenceProgress;
+		new Thread("Reference Index") {
+			public void run() {
+				try {
+					final ReferenceIndex referenceIndex = ReferenceIndex.build(fernflowerBridge, file, entryNames, referenceProgress);
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							if (progress == ProjectWindow.this.decompileProgress)
+								ProjectWindow.this.referenceIndex = referenceIndex;
+						}
+					});
+				} catch (CancellationException | InterruptedException exception) {
+					// Another archive was opened
+				} catch (Exception exception) {
+					Log.error("Could not index references of " + file.getName(), exception);
+				}
+			}
+		}.start();
+	}
+
+	public void addLibrary(final File library) {
+		final DecompileProgress progress = this.decompileProgress;
+		new Thread() {
+			public void run() {
+				try {
+					ProjectWindow.this.workspace.addLibrary(library);
+					ProjectWindow.this.updateLibraries();
+					ProjectWindow.this.showNotification(progress, "Added library " + library.getName(), false);
+				} catch (IOException exception) {
+					Log.error("Could not add library " + library.getName(), exception);
+					ProjectWindow.this.showNotification(progress, "Could not add library " + library.getName(), true);
+				}
+			}
+		}.start();
+	}
+
+	public void clearLibraries() {
+		this.workspace.clearLibraries();
+		this.updateLibraries();
+	}
+
+	private void updateLibraries() {
+		// Applies to classes decompiled from now on
+		FernflowerBridge fernflowerBridge = this.fernflowerBridge;
+		File file = this.loadedFile;
+		if (fernflowerBridge == null || file == null || !this.isArchive(file))
+			return;
+		try {
+			fernflowerBridge.setLibraries(this.workspace.getLibraryContext(file));
+		} catch (IOException exception) {
+			Log.error("Could not update libraries", exception);
+		}
+	}
+
+	public void cancelDecompilation() {
+		// Stops the background job, classes can still be opened on demand
+		if (this.decompileProgress != null)
+			this.decompileProgress.cancel();
 	}
 
 	public void closeFile() {
-		this.fernflowerBridge.cleanup();
+		this.closeFile(false);
+	}
+
+	private void closeFile(boolean keepResults) {
+		if (this.fernflowerBridge == null)
+			return;
+		
+		this.decompileProgress.cancel();
+		this.userInterface.showProgress(null);
+		ArchiveManager archiveManager = this.fernflowerBridge.getArchiveManager();
+		Log.info("Archive access: " + archiveManager.getOpened() + " opened, " + archiveManager.getHits() + " hits, " + archiveManager.getBytesRead() + " bytes read");
+		archiveManager.close();
+		if (this.fernflowerBridge.getBytecodeProvider() instanceof MappedBytecodeProvider)
+			((MappedBytecodeProvider) this.fernflowerBridge.getBytecodeProvider()).close();
+		if (!keepResults) {
+			// Otherwise the results are released after they were carried over to the new build
+			this.fernflowerBridge.cleanup();
+			this.fileTree.setModel(new DefaultTreeModel(null));
+			// Their sources are gone, so evicted tabs could not be reloaded
+			this.codeTabs.closeAll();
+		}
 		this.fernflowerBridge = null;
-		this.fileTree.setModel(new DefaultTreeModel(null));
+		this.decompileProgress = null;
+		if (this.decompileScheduler != null)
+			this.decompileScheduler.shutdown();
+		this.decompileScheduler = null;
+		this.archiveSnapshot = null;
+		if (this.referenceProgress != null)
+			this.referenceProgress.cancel();
+		this.referenceProgress = null;
+		this.referenceIndex = null;
 		this.loadedFile = null;
 		System.gc();
 	}
 
-	private void updateFileTree(File file) {
-		try {
-			if (file.getName().toLowerCase().endsWith(".zip") || file.getName().toLowerCase().endsWith(".jar")) {
-				JarFile jar = new JarFile(file);
-				JarEntryUtility utility = new JarEntryUtility(jar);
-				List<String> jarEntries = utility.getEntriesWithoutInnerClasses();
+	private void showFileTree(final DecompileProgress progress, final DefaultTreeModel treeModel, final Set<String> changedClasses) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (progress != ProjectWindow.this.decompileProgress)
+					return;
 				
-				System.out.println("Found " + jarEntries.size() + " entries");
-				this.buildDirectoryTree(jarEntries);
-			} else {
-				TreeNodeUserObject topNodeUserObject = new TreeNodeUserObject(getName(file.getName()));
-				final DefaultMutableTreeNode top = new DefaultMutableTreeNode(topNodeUserObject);
-				this.fileTree.setModel(new DefaultTreeModel(top));
-
-				// open it automatically
-				new Thread() {
-					public void run() {
-						TreePath path = new TreePath(top.getPath());
-						openEntry(path);
-					};
-				}.start();
+				if (changedClasses != null) {
+					// Same archive, keep the expanded packages and the open tabs
+					Set<String> expanded = ProjectWindow.this.getExpandedPaths();
+					ProjectWindow.this.fileTree.setModel(treeModel);
+					ProjectWindow.this.expandPaths(expanded);
+					ProjectWindow.this.refreshTabs(changedClasses);
+					return;
+				}
+				ProjectWindow.this.fileTree.setModel(treeModel);
+				if (!ProjectWindow.this.isArchive(ProjectWindow.this.loadedFile)) {
+					// open it automatically
+					final DefaultMutableTreeNode top = (DefaultMutableTreeNode) treeModel.getRoot();
+					new Thread() {
+						public void run() {
+							TreePath path = new TreePath(top.getPath());
+							openEntry(path);
+						};
+					}.start();
+				}
 			}
-		} catch (Exception exception) {
-			exception.printStackTrace();
-		} finally {
-			NotificationManager.showInnerNotification("Decompiling complete!");
+		});
+	}
+
+	private Set<String> getExpandedPaths() {
+		Set<String> expanded = new HashSet<String>();
+		Object root = this.fileTree.getModel().getRoot();
+		if (root == null)
+			return expanded;
+		Enumeration<TreePath> paths = this.fileTree.getExpandedDescendants(new TreePath(root));
+		if (paths == null)
+			return expanded;
+		while (paths.hasMoreElements())
+			expanded.add(this.getEntryPath(paths.nextElement()));
+		return expanded;
+	}
+
+	private void expandPaths(Set<String> expanded) {
+		// Rows grow while expanding, so walk them in order
+		for (int row = 0; row < this.fileTree.getRowCount(); row++) {
+			TreePath path = this.fileTree.getPathForRow(row);
+			if (expanded.contains(this.getEntryPath(path)))
+				this.fileTree.expandPath(path);
 		}
 	}
-	
-	private void buildDirectoryTree(List<String> jarEntries) {
-		TreeNodeUserObject topNodeUserObject = new TreeNodeUserObject(getName(this.loadedFile.getName()));
-		DefaultMutableTreeNode top = new DefaultMutableTreeNode(topNodeUserObject);
-		List<String> sort = new ArrayList<String>();
-		Collections.sort(jarEntries, String.CASE_INSENSITIVE_ORDER);
-		for (String m : jarEntries)
-			if (m.contains("META-INF") && !sort.contains(m))
-				sort.add(m);
-		Set<String> set = new HashSet<String>();
-		for (String m : jarEntries) {
-			if (m.contains("/")) {
-				set.add(m.substring(0, m.lastIndexOf("/") + 1));
+
+	private void refreshTabs(Set<String> changedClasses) {
+		final ArchiveSnapshot snapshot = this.archiveSnapshot;
+		for (final String entryName : this.codeTabs.getEntryNames()) {
+			boolean nested = entryName.contains(ArchiveManager.NESTED_SEPARATOR);
+			if (!nested && snapshot != null && !snapshot.contains(entryName)) {
+				// Class no longer exists in the new build
+				this.codeTabs.close(entryName);
+				continue;
 			}
+			// Nested archives are not part of the snapshot, so their classes are always reloaded
+			if (!nested && !changedClasses.contains(entryName.substring(0, entryName.length() - 5) + "java"))
+				continue;
+			
+			new Thread() {
+				public void run() {
+					ProjectWindow.this.reloadTab(entryName);
+				}
+			}.start();
 		}
-		List<String> packs = Arrays.asList(set.toArray(new String[] {}));
-		Collections.sort(packs, String.CASE_INSENSITIVE_ORDER);
-		Collections.sort(packs, new Comparator<String>() {
-			public int compare(String o1, String o2) {
-				return o2.split("/").length - o1.split("/").length;
+	}
+
+	private void reloadTab(final String entryName) {
+		final String code = this.getSource(entryName);
+		if (code == null)
+			return;
+		
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				ProjectWindow.this.codeTabs.reload(entryName, code);
 			}
 		});
-		for (String pack : packs)
-			for (String m : jarEntries)
-				if (!m.contains("META-INF") && m.contains(pack) && !m.replace(pack, "").contains("/"))
-					sort.add(m);
-		for (String m : jarEntries)
-			if (!m.contains("META-INF") && !m.contains("/") && !sort.contains(m))
-				sort.add(m);
-		for (String pack : sort) {
-			LinkedList<String> list = new LinkedList<String>(Arrays.asList(pack.split("/")));
-			this.loadNodesByNames(top, list);
-		}
-		this.fileTree.setModel(new DefaultTreeModel(top));
 	}
-	
-	public DefaultMutableTreeNode loadNodesByNames(DefaultMutableTreeNode node, List<String> originalNames) {
-		List<TreeNodeUserObject> args = new ArrayList<>();
-		for (String originalName : originalNames) {
-			args.add(new TreeNodeUserObject(originalName));
-		}
-		return this.loadNodesByUserObject(node, args);
+
+	public String getSource(String entryName) {
+		// Decompiled on demand when the class is not in the result store
+		FernflowerBridge fernflowerBridge = this.fernflowerBridge;
+		if (fernflowerBridge == null)
+			return null;
+		String sourceName = entryName.substring(0, entryName.length() - 5) + "java";
+		FFDecompiledClass decompiledClass = fernflowerBridge.getDecompiledClass(sourceName);
+		DecompileScheduler decompileScheduler = this.decompileScheduler;
+		if (decompiledClass == null && decompileScheduler != null)
+			decompiledClass = decompileScheduler.request(entryName);
+		return decompiledClass == null ? null : decompiledClass.getContent();
 	}
-	
-	public DefaultMutableTreeNode loadNodesByUserObject(DefaultMutableTreeNode node, List<TreeNodeUserObject> args) {
-		if (args.size() > 0) {
-			TreeNodeUserObject name = args.remove(0);
-			DefaultMutableTreeNode nod = getChild(node, name);
-			if (nod == null)
-				nod = new DefaultMutableTreeNode(name);
-			node.add(loadNodesByUserObject(nod, args));
+
+	private String getEntryPath(TreePath treePath) {
+		StringBuilder path = new StringBuilder();
+		for (int i = 1; i < treePath.getPathCount(); i++) {
+			DefaultMutableTreeNode node = (DefaultMutableTreeNode) treePath.getPathComponent(i);
+			if (i > 1)
+				path.append('/');
+			path.append(((TreeNodeUserObject) node.getUserObject()).getRealName());
 		}
-		return node;
+		return path.toString();
 	}
-	
-	public DefaultMutableTreeNode getChild(DefaultMutableTreeNode node, TreeNodeUserObject name) {
-		@SuppressWarnings("unchecked")
-		Enumeration<DefaultMutableTreeNode> entry = node.children();
-		while (entry.hasMoreElements()) {
-			DefaultMutableTreeNode nods = entry.nextElement();
-			if (((TreeNodeUserObject) nods.getUserObject()).getRealName().equals(name.getRealName())) {
-				return nods;
+
+	private void showNotification(final DecompileProgress progress, final String message, final boolean error) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (progress != ProjectWindow.this.decompileProgress)
+					return;
+				
+				if (error)
+					NotificationManager.showInnerNotification(message, NotificationIcon.error.getIcon());
+				else
+					NotificationManager.showInnerNotification(message);
 			}
+		});
+	}
+
+	private DefaultTreeModel createFileTree(File file, ArchiveManager archiveManager) throws IOException {
+		if (this.isArchive(file)) {
+			List<String> jarEntries = archiveManager.getEntryIndex(file).getEntriesWithoutInnerClasses();
+			
+			Log.info("Found " + jarEntries.size() + " entries");
+			// Nodes are only created for the packages that are expanded
+			return new ArchiveTreeModel(getName(file.getName()), ArchiveTreeIndex.create(jarEntries));
 		}
-		return null;
+		
+		TreeNodeUserObject topNodeUserObject = new TreeNodeUserObject(getName(file.getName()));
+		return new DefaultTreeModel(new DefaultMutableTreeNode(topNodeUserObject));
+	}
+
+	public void expandNestedArchive(final DefaultMutableTreeNode node) {
+		final DecompileProgress progress = this.decompileProgress;
+		final NestedArchiveUserObject userObject = (NestedArchiveUserObject) node.getUserObject();
+		final String entryName = userObject.getEntryName();
+		final DefaultMutableTreeNode top;
+		try {
+			List<String> entries = this.fernflowerBridge.getArchiveManager().getNestedEntryIndex(this.loadedFile, entryName).getEntriesWithoutInnerClasses();
+			Log.info("Found " + entries.size() + " entries in " + entryName);
+			top = new ArchiveTreeNode(entryName, ArchiveTreeIndex.create(entries), ArchiveTreeIndex.ROOT, entryName + ArchiveManager.NESTED_SEPARATOR);
+		} catch (Exception e) {
+			Log.error("Could not open " + entryName, e);
+			this.showNotification(progress, "Could not open " + entryName, true);
+			
+			// The archive is read again the next time it is expanded
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					userObject.setLoaded(false);
+					if (progress != ProjectWindow.this.decompileProgress)
+						return;
+					
+					node.removeAllChildren();
+					node.add(new DefaultMutableTreeNode(new TreeNodeUserObject("", "Could not open this archive")));
+					((DefaultTreeModel) ProjectWindow.this.fileTree.getModel()).nodeStructureChanged(node);
+				}
+			});
+			return;
+		}
+		
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (progress != ProjectWindow.this.decompileProgress)
+					return;
+				
+				node.removeAllChildren();
+				while (top.getChildCount() > 0)
+					node.add((MutableTreeNode) top.getChildAt(0));
+				((DefaultTreeModel) ProjectWindow.this.fileTree.getModel()).nodeStructureChanged(node);
+				ProjectWindow.this.fileTree.expandPath(new TreePath(node.getPath()));
+			}
+		});
 	}
 	
 	public void openEntry(TreePath treePath) {
@@ -231,45 +558,16 @@ public class ProjectWindow extends WebSplitPane {
 					TreeNodeUserObject userObject = (TreeNodeUserObject) node.getUserObject();
 					if (i == treePath.getPathCount() - 1) {
 						name = userObject.getRealName();
+					} else if (userObject instanceof NestedArchiveUserObject) {
+						path = ((NestedArchiveUserObject) userObject).getEntryName() + ArchiveManager.NESTED_SEPARATOR;
 					} else {
 						path = path + userObject.getRealName() + "/";
 					}
 				}
 				path = path + name;
 
-				if (this.loadedFile.getName().toLowerCase().endsWith(".jar") || this.loadedFile.getName().toLowerCase().endsWith(".zip")) {
-					JarFile jarFile = new JarFile(this.loadedFile);
-					JarEntry entry = jarFile.getJarEntry(path);
-					if (entry == null) {
-						System.out.println("Could not find: " + path);
-						throw new FileNotFoundException();
-					}
-					String entryName = entry.getName();
-					if (entryName.endsWith(".class")) {
-						entryName = entryName.substring(0, entryName.length() - 5) + "java";
-						NotificationManager.showInnerNotification("Opening " + name);
-						System.out.println("Find: " + entryName);
-						String code = this.fernflowerBridge.getDecompiledClass(entryName).getContent();
-						RSyntaxTextArea textArea = new RSyntaxTextArea(25, 70);
-						textArea.setCaretPosition(0);
-						textArea.requestFocusInWindow();
-						textArea.setMarkOccurrences(true);
-						textArea.setClearWhitespaceLinesEnabled(false);
-						textArea.setEditable(false);
-						textArea.setAntiAliasingEnabled(true);
-						textArea.setCodeFoldingEnabled(true);
-						textArea.setSyntaxEditingStyle(RSyntaxTextArea.SYNTAX_STYLE_JAVA);
-						textArea.setText(code);
-						this.codeTabbedPane.addTab(name.substring(0, name.length() - 5) + "java", new RTextScrollPane(textArea));
-						this.codeTabbedPane.setSelectedIndex(this.codeTabbedPane.getTabCount() - 1);
-						// TODO move this mess
-					} else {
-						NotificationManager.showInnerNotification("Opening " + name);
-						try (InputStream in = jarFile.getInputStream(entry);) {
-							// TODO
-						}
-					}
-				}
+				if (this.isArchive(this.loadedFile))
+					this.openArchiveEntry(path, name);
 			} else {
 				name = this.loadedFile.getName();
 				path = this.loadedFile.getPath().replaceAll("\\\\", "/");
@@ -284,11 +582,184 @@ public class ProjectWindow extends WebSplitPane {
 				}
 			}
 		} catch (Exception e) {
-			e.printStackTrace();
+			Log.error("Could not open " + path, e);
 			NotificationManager.showInnerNotification("An error occurred", NotificationIcon.error.getIcon());
 		}
 	}
 	
+	public void openEntry(String entryName) {
+		// Inner classes are shown in the source of their outer class
+		String path = JarEntryUtility.getOuterClassName(entryName);
+		try {
+			File file = this.loadedFile;
+			if (file != null && this.isArchive(file))
+				this.openArchiveEntry(path, this.getName(path));
+		} catch (Exception e) {
+			Log.error("Could not open " + path, e);
+			NotificationManager.showInnerNotification("An error occurred", NotificationIcon.error.getIcon());
+		}
+	}
+
+	private void openArchiveEntry(String path, String name) throws IOException {
+		JarFile jarFile = this.fernflowerBridge.getArchiveManager().getArchive(this.loadedFile);
+		ZipEntry entry = this.getEntry(jarFile, path);
+		if (entry == null) {
+			Log.warn("Could not find: " + path);
+			throw new FileNotFoundException();
+		}
+		String entryName = entry.getName();
+		if (entryName.endsWith(".class")) {
+			entryName = entryName.substring(0, entryName.length() - 5) + "java";
+			NotificationManager.showInnerNotification("Opening " + name);
+			Log.trace("Find: " + entryName);
+			FFDecompiledClass decompiledClass = this.fernflowerBridge.getDecompiledClass(entryName);
+			if (decompiledClass == null && this.decompileScheduler != null)
+				decompiledClass = this.decompileScheduler.request(entry.getName());
+			if (decompiledClass == null)
+				throw new FileNotFoundException(entryName);
+			final String title = name.substring(0, name.length() - 5) + "java";
+			final String classEntryName = entry.getName();
+			final String code = decompiledClass.getContent();
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					ProjectWindow.this.codeTabs.open(title, classEntryName, code);
+				}
+			});
+		} else {
+			NotificationManager.showInnerNotification("Opening " + name);
+			try (InputStream in = jarFile.getInputStream(entry);) {
+				// TODO
+			}
+		}
+	}
+
+	public void findUsages() {
+		this.findReferences(false);
+	}
+
+	public void findImplementations() {
+		this.findReferences(true);
+	}
+
+	private void findReferences(boolean implementations) {
+		String entryName = this.codeTabs.getSelectedEntryName();
+		if (entryName == null) {
+			NotificationManager.showInnerNotification("No class opened");
+			return;
+		}
+		ReferenceIndex referenceIndex = this.referenceIndex;
+		if (referenceIndex == null) {
+			NotificationManager.showInnerNotification(this.referenceProgress != null ? "References are still being indexed" : "No archive loaded");
+			return;
+		}
+		int classId = referenceIndex.getEntryClassId(entryName);
+		if (classId == -1 || entryName.contains(ArchiveManager.NESTED_SEPARATOR)) {
+			NotificationManager.showInnerNotification("Only classes of the opened archive are indexed");
+			return;
+		}
+		
+		// A selected name is an inner class of the tab or else one of its members
+		RSyntaxTextArea selectedTextArea = this.codeTabs.getSelectedTextArea();
+		String selection = selectedTextArea == null ? null : selectedTextArea.getSelectedText();
+		String member = null;
+		if (selection != null && this.isIdentifier(selection.trim())) {
+			int innerId = referenceIndex.getClassId(referenceIndex.getClassName(classId) + "$" + selection.trim());
+			if (innerId != -1)
+				classId = innerId;
+			else if (!implementations)
+				member = selection.trim();
+		}
+		
+		long start = System.nanoTime();
+		String title = referenceIndex.getClassName(classId).replace('/', '.');
+		int[] classes;
+		if (implementations) {
+			classes = referenceIndex.getImplementations(classId);
+			title = "Implementations of " + title;
+		} else if (member != null) {
+			classes = referenceIndex.getUsages(classId, member);
+			title = "Usages of " + title + "." + member;
+		} else {
+			classes = referenceIndex.getUsages(classId);
+			title = "Usages of " + title;
+		}
+		new ReferenceWindow(this.userInterface, title, referenceIndex, classes, (System.nanoTime() - start) / 1000L).setVisible(true);
+	}
+
+	private boolean isIdentifier(String text) {
+		if (text.isEmpty() || !Character.isJavaIdentifierStart(text.charAt(0)))
+			return false;
+		for (int i = 1; i < text.length(); i++)
+			if (!Character.isJavaIdentifierPart(text.charAt(i)))
+				return false;
+		return true;
+	}
+
+	public SourceSearch createSearch(SearchQuery query) {
+		FernflowerBridge fernflowerBridge = this.fernflowerBridge;
+		if (fernflowerBridge == null || fernflowerBridge.getSearchIndex() == null)
+			return null;
+		return new SourceSearch(fernflowerBridge.getSearchIndex(), fernflowerBridge.getResultStore(), query);
+	}
+
+	public ConstantPoolSearch createConstantPoolSearch(int kind, String text, boolean matchCase) {
+		FernflowerBridge fernflowerBridge = this.fernflowerBridge;
+		File file = this.loadedFile;
+		if (fernflowerBridge == null || file == null || !this.isArchive(file))
+			return null;
+		try {
+			// Inner classes are searched as well, nested archives are not
+			return new ConstantPoolSearch(fernflowerBridge, file, fernflowerBridge.getArchiveManager().getEntryIndex(file).getEntryNames(), kind, text, matchCase);
+		} catch (IOException exception) {
+			Log.error("Could not read " + file.getName(), exception);
+			return null;
+		}
+	}
+
+	public void openSource(final String sourceName, final int line) {
+		if (this.fernflowerBridge == null)
+			return;
+		// Constant pool matches may not be decompiled yet, so the source is never read on the EDT
+		new Thread() {
+			public void run() {
+				final String entryName = sourceName.substring(0, sourceName.length() - 4) + "class";
+				final String code = ProjectWindow.this.getSource(entryName);
+				if (code == null) {
+					Log.warn("Could not find: " + sourceName);
+					return;
+				}
+				
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						// An open tab of the class is reused
+						RSyntaxTextArea textArea = ProjectWindow.this.codeTabs.open(ProjectWindow.this.getName(sourceName), entryName, code);
+						try {
+							textArea.setCaretPosition(textArea.getLineStartOffset(Math.max(0, line - 1)));
+							textArea.requestFocusInWindow();
+						} catch (BadLocationException exception) {
+							// The source changed since it was searched, keep the caret where it is
+						}
+					}
+				});
+			}
+		}.start();
+	}
+
+	private ZipEntry getEntry(JarFile jarFile, String path) throws IOException {
+		int separator = path.lastIndexOf(ArchiveManager.NESTED_SEPARATOR);
+		if (separator == -1)
+			return jarFile.getJarEntry(path);
+		
+		MappedArchive archive = this.fernflowerBridge.getArchiveManager().getNestedArchive(this.loadedFile, path.substring(0, separator));
+		if (!archive.contains(path.substring(separator + ArchiveManager.NESTED_SEPARATOR.length())))
+			return null;
+		return new ZipEntry(path);
+	}
+	
+	private boolean isArchive(File file) {
+		return JarEntryUtility.isNestedArchive(file.getName());
+	}
+	
 	private String getName(String path) {
 		if (path == null)
 			return "";
@@ -303,4 +774,20 @@ public class ProjectWindow extends WebSplitPane {
 	public WebTree<MutableTreeNode> getFileTree() {
 		return this.fileTree;
 	}
+
+	public boolean isLazyDecompilation() {
+		return this.lazyDecompilation;
+	}
+
+	public void setLazyDecompilation(boolean lazyDecompilation) {
+		this.lazyDecompilation = lazyDecompilation;
+	}
+
+	public int getMaxEditors() {
+		return this.codeTabs.getMaxEditors();
+	}
+
+	public void setMaxEditors(int maxEditors) {
+		this.codeTabs.setMaxEditors(maxEditors);
+	}
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import javax.swing.AbstractListModel;
+import javax.swing.JDialog;
+import javax.swing.JPanel;
+
+import com.alee.laf.label.WebLabel;
+import com.alee.laf.list.WebList;
+import com.alee.laf.scroll.WebScrollPane;
+import com.marcomoesman.verdant.search.ReferenceIndex;
+
+public class ReferenceWindow extends JDialog {
+
+	/**
+	 * Serial Version UID
+	 */
+	private static final long serialVersionUID = 7264915098830157461L;
+
+	public ReferenceWindow(final UserInterface userInterface, String title, final ReferenceIndex referenceIndex, final int[] classes, long micros) {
+		super(userInterface, title, false);
+		
+		// Rows are named when they are shown, a class used everywhere does not need a string per usage
+		final WebList resultList = new WebList(new AbstractListModel<String>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public int getSize() {
+				return classes.length;
+			}
+
+			@Override
+			public String getElementAt(int index) {
+				String className = referenceIndex.getClassName(classes[index]).replace('/', '.');
+				return referenceIndex.isInterface(classes[index]) ? className + "  (interface)" : className;
+			}
+		});
+		resultList.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		resultList.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() != 2 || resultList.getSelectedIndex() == -1)
+					return;
+				final String entryName = referenceIndex.getEntryName(classes[resultList.getSelectedIndex()]);
+				new Thread() {
+					public void run() {
+						userInterface.openEntry(entryName);
+					}
+				}.start();
+			}
+		});
+		this.getContentPane().add(new WebScrollPane(resultList), BorderLayout.CENTER);
+		
+		JPanel status = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		status.add(new WebLabel(classes.length + " classes, found in " + String.format("%.2f", micros / 1000D) + " ms"));
+		this.getContentPane().add(status, BorderLayout.SOUTH);
+		
+		this.setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		this.setPreferredSize(new Dimension(700, 400));
+		this.pack();
+		this.setLocationRelativeTo(userInterface);
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.DefaultListModel;
+import javax.swing.JDialog;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import com.alee.laf.button.WebButton;
+import com.alee.laf.checkbox.WebCheckBox;
+import com.alee.laf.combobox.WebComboBox;
+import com.alee.laf.label.WebLabel;
+import com.alee.laf.list.WebList;
+import com.alee.laf.scroll.WebScrollPane;
+import com.alee.laf.text.WebTextField;
+import com.marcomoesman.verdant.search.ArchiveSearch;
+import com.marcomoesman.verdant.search.ConstantPoolSearch;
+import com.marcomoesman.verdant.search.SearchListener;
+import com.marcomoesman.verdant.search.SearchQuery;
+import com.marcomoesman.verdant.search.SearchResult;
+import com.marcomoesman.verdant.search.SourceSearch;
+
+public class SearchWindow extends JDialog {
+
+	/**
+	 * Serial Version UID
+	 */
+	private static final long serialVersionUID = -3527718329207155180L;
+
+	private static final String[] SCOPES = { "Decompiled sources", "String literals", "Class references", "Member references" };
+
+	private final UserInterface userInterface;
+	private final WebTextField queryField;
+	private final WebComboBox scopeBox;
+	private final WebCheckBox regexBox;
+	private final WebCheckBox matchCaseBox;
+	private final DefaultListModel<SearchResult> results;
+	private final WebLabel statusLabel;
+	private volatile ArchiveSearch search = null;
+
+	public SearchWindow(UserInterface userInterface) {
+		super(userInterface, "Find in Archive", false);
+		this.userInterface = userInterface;
+		
+		this.queryField = new WebTextField(40);
+		// Sources are searched as text, the other scopes read the constant pools of every class
+		this.scopeBox = new WebComboBox(SCOPES);
+		this.scopeBox.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				SearchWindow.this.regexBox.setEnabled(SearchWindow.this.scopeBox.getSelectedIndex() == 0);
+			}
+		});
+		this.regexBox = new WebCheckBox("Regex");
+		this.matchCaseBox = new WebCheckBox("Match case");
+		WebButton findButton = new WebButton("Find");
+		ActionListener findListener = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				SearchWindow.this.find();
+			}
+		};
+		this.queryField.addActionListener(findListener);
+		findButton.addActionListener(findListener);
+		JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		controls.add(this.queryField);
+		controls.add(this.scopeBox);
+		controls.add(this.regexBox);
+		controls.add(this.matchCaseBox);
+		controls.add(findButton);
+		this.getContentPane().add(controls, BorderLayout.NORTH);
+		
+		this.results = new DefaultListModel<SearchResult>();
+		final WebList resultList = new WebList(this.results);
+		resultList.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		resultList.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() != 2)
+					return;
+				SearchResult result = (SearchResult) resultList.getSelectedValue();
+				if (result != null)
+					SearchWindow.this.userInterface.openSource(result.getSourceName(), result.getLine());
+			}
+		});
+		this.getContentPane().add(new WebScrollPane(resultList), BorderLayout.CENTER);
+		
+		this.statusLabel = new WebLabel(" ");
+		JPanel status = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		status.add(this.statusLabel);
+		this.getContentPane().add(status, BorderLayout.SOUTH);
+		
+		this.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				SearchWindow.this.cancel();
+			}
+		});
+		
+		this.setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		this.setPreferredSize(new Dimension(900, 450));
+		this.pack();
+		this.setLocationRelativeTo(userInterface);
+	}
+
+	private void find() {
+		this.cancel();
+		this.results.clear();
+		String text = this.queryField.getText();
+		if (text.isEmpty())
+			return;
+		
+		final ArchiveSearch search;
+		int scope = this.scopeBox.getSelectedIndex();
+		if (scope == 0) {
+			try {
+				search = this.userInterface.createSearch(new SearchQuery(text, this.regexBox.isSelected(), this.matchCaseBox.isSelected()));
+			} catch (PatternSyntaxException exception) {
+				this.statusLabel.setText("Invalid regex: " + exception.getDescription());
+				return;
+			}
+		} else {
+			int kind = scope == 1 ? ConstantPoolSearch.STRING_LITERALS : scope == 2 ? ConstantPoolSearch.CLASS_REFERENCES : ConstantPoolSearch.MEMBER_REFERENCES;
+			search = this.userInterface.createConstantPoolSearch(kind, text, this.matchCaseBox.isSelected());
+		}
+		if (search == null) {
+			this.statusLabel.setText("No project loaded");
+			return;
+		}
+		this.search = search;
+		this.statusLabel.setText("Searching...");
+		
+		// Matches are added to the list while the search goes on
+		new Thread("Search") {
+			public void run() {
+				try {
+					search.run(new SearchListener() {
+						@Override
+						public void found(final List<SearchResult> found) {
+							SwingUtilities.invokeLater(new Runnable() {
+								public void run() {
+									if (search != SearchWindow.this.search)
+										return;
+									for (SearchResult result : found)
+										SearchWindow.this.results.addElement(result);
+								}
+							});
+						}
+
+						@Override
+						public void finished(int found, int matchedClasses, int searchedClasses, int totalClasses, long millis) {
+							String searched = search instanceof SourceSearch ? " decompiled classes" : " classes";
+							final String status = found + " results in " + matchedClasses + " classes, " + searchedClasses + " of " + totalClasses
+									+ searched + " searched in " + millis + " ms" + (found >= SourceSearch.MAX_RESULTS ? ", results limited" : "");
+							SwingUtilities.invokeLater(new Runnable() {
+								public void run() {
+									if (search == SearchWindow.this.search)
+										SearchWindow.this.statusLabel.setText(status);
+								}
+							});
+						}
+					});
+				} catch (InterruptedException exception) {
+					search.cancel();
+				}
+			}
+		}.start();
+	}
+
+	private void cancel() {
+		ArchiveSearch search = this.search;
+		if (search != null)
+			search.cancel();
+		this.search = null;
+	}
+
+}
@@ -25,6 +25,8 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.Insets;
 import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
@@ -43,8 +45,14 @@ import com.alee.extended.overlay.AlignedOverlay;
 import com.alee.extended.overlay.WebOverlay;
 import com.alee.extended.statusbar.WebStatusBar;
 import com.alee.laf.label.WebLabel;
+import com.alee.laf.progressbar.WebProgressBar;
 import com.alee.managers.notification.NotificationManager;
 import com.alee.managers.style.StyleId;
+import com.marcomoesman.verdant.fernflower.DecompileProgress;
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.search.ConstantPoolSearch;
+import com.marcomoesman.verdant.search.SearchQuery;
+import com.marcomoesman.verdant.search.SourceSearch;
 
 public class UserInterface extends JFrame {
 
@@ -55,8 +63,15 @@ public class UserInterface extends JFrame {
 	
 	private final MenuBar menuBar;
 	private final WebLabel loadedProjectLabel;
+	private final WebLabel progressLabel;
+	private final WebProgressBar progressBar;
+	private final javax.swing.Timer progressTimer;
 	private final ProjectWindow projectWindow;
 	
+	private DecompileProgress progress = null;
+	private LogWindow logWindow = null;
+	private SearchWindow searchWindow = null;
+	
 	public UserInterface() {
 		super("Verdant Decompiler");
 		
@@ -68,7 +83,18 @@ public class UserInterface extends JFrame {
 		this.setPreferredSize(new Dimension(1200, 680));
 		
 		this.loadedProjectLabel = new WebLabel("No project loaded");
+		this.progressLabel = new WebLabel();
+		this.progressBar = new WebProgressBar();
+		this.progressBar.setPreferredWidth(150);
+		// Poll the progress instead of pushing every class onto the EDT
+		this.progressTimer = new javax.swing.Timer(250, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				UserInterface.this.updateProgress();
+			}
+		});
 		this.initializeStatus();
+		this.showProgress(null);
 		
 		this.projectWindow = new ProjectWindow(this);
 		this.getContentPane().add(this.projectWindow);
@@ -100,7 +126,8 @@ public class UserInterface extends JFrame {
 			// Close current file
 			UserInterface.this.closeFile();
 			// Say goodbyte
-			System.out.println("Goodbye.");
+			Log.info("Goodbye.");
+			Log.flush();
 			// Shutdown program
 			System.exit(0);
 		} catch (Throwable ignored) {
@@ -114,6 +141,11 @@ public class UserInterface extends JFrame {
 		statusBar.addSpacing(5);
 		statusBar.add(this.loadedProjectLabel);
 		statusBar.addSpacingToEnd(10);
+		
+		statusBar.addToEnd(this.progressLabel);
+		statusBar.addSpacingToEnd(5);
+		statusBar.addToEnd(this.progressBar);
+		statusBar.addSpacingToEnd(10);
 
 		final WebOverlay memoryBarOverlay = new WebOverlay();
 
@@ -143,6 +175,46 @@ public class UserInterface extends JFrame {
 		this.loadedProjectLabel.setText(title);
 	}
 
+	public void showProgress(DecompileProgress progress) {
+		this.progress = progress;
+		if (progress == null) {
+			this.progressTimer.stop();
+			this.progressLabel.setVisible(false);
+			this.progressBar.setVisible(false);
+			return;
+		}
+		
+		this.progressBar.setValue(0);
+		this.progressTimer.start();
+	}
+	
+	private void updateProgress() {
+		DecompileProgress progress = this.progress;
+		if (progress == null)
+			return;
+		
+		// Lazy decompilation has no background job to report on
+		int total = progress.getTotal();
+		if (total <= 0 || progress.isCancelled() || progress.isFinished()) {
+			this.progressLabel.setVisible(false);
+			this.progressBar.setVisible(false);
+			if (progress.isFinished())
+				this.progressTimer.stop();
+			return;
+		}
+		
+		int done = progress.getDone();
+		String text = String.format("%d / %d classes, %.1f/s", done, total, progress.getClassesPerSecond());
+		long remaining = progress.getRemainingMillis();
+		if (remaining >= 0)
+			text += String.format(", ETA %d:%02d", remaining / 60000, (remaining / 1000) % 60);
+		this.progressLabel.setText(text);
+		this.progressBar.setMaximum(total);
+		this.progressBar.setValue(done);
+		this.progressLabel.setVisible(true);
+		this.progressBar.setVisible(true);
+	}
+
 	public void openFile(File file) {
 		// Send file to ProjectWindow
 		this.projectWindow.openFile(file);
@@ -150,11 +222,86 @@ public class UserInterface extends JFrame {
 		this.setProjectTitle(file.getName());
 	}
 
+	public void addLibrary(File library) {
+		// Send library to ProjectWindow
+		this.projectWindow.addLibrary(library);
+	}
+
+	public void clearLibraries() {
+		// Send clear to ProjectWindow
+		this.projectWindow.clearLibraries();
+	}
+
+	public void cancelDecompilation() {
+		// Send cancel to ProjectWindow
+		this.projectWindow.cancelDecompilation();
+	}
+
 	public void closeFile() {
 		// Send close to ProjectWindow
 		this.projectWindow.closeFile();
 		// Reset project title
 		this.setProjectTitle(null);
 	}
+
+	public void showLog() {
+		// One log window, brought to the front when it is already open
+		if (this.logWindow == null || !this.logWindow.isDisplayable())
+			this.logWindow = new LogWindow(this);
+		this.logWindow.setVisible(true);
+		this.logWindow.toFront();
+	}
+
+	public void showSearch() {
+		// Only classes which were decompiled are searched
+		if (this.searchWindow == null || !this.searchWindow.isDisplayable())
+			this.searchWindow = new SearchWindow(this);
+		this.searchWindow.setVisible(true);
+		this.searchWindow.toFront();
+	}
+
+	public SourceSearch createSearch(SearchQuery query) {
+		// Send query to ProjectWindow
+		return this.projectWindow.createSearch(query);
+	}
+
+	public ConstantPoolSearch createConstantPoolSearch(int kind, String text, boolean matchCase) {
+		// Send query to ProjectWindow
+		return this.projectWindow.createConstantPoolSearch(kind, text, matchCase);
+	}
+
+	public void openSource(String sourceName, int line) {
+		// Send source to ProjectWindow
+		this.projectWindow.openSource(sourceName, line);
+	}
+
+	public void findUsages() {
+		// Send the open tab to ProjectWindow
+		this.projectWindow.findUsages();
+	}
+
+	public void findImplementations() {
+		// Send the open tab to ProjectWindow
+		this.projectWindow.findImplementations();
+	}
+
+	public void openEntry(String entryName) {
+		// Send entry to ProjectWindow
+		this.projectWindow.openEntry(entryName);
+	}
+
+	public void setLazyDecompilation(boolean lazyDecompilation) {
+		// Applies to the next file that is opened
+		this.projectWindow.setLazyDecompilation(lazyDecompilation);
+	}
+
+	public int getMaxEditors() {
+		return this.projectWindow.getMaxEditors();
+	}
+
+	public void setMaxEditors(int maxEditors) {
+		// Tabs beyond the limit keep a placeholder instead of their editor
+		this.projectWindow.setMaxEditors(maxEditors);
+	}
 	
 }
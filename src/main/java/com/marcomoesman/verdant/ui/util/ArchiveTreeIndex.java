@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.ui.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ArchiveTreeIndex {
+
+	public static final int ROOT = 0;
+
+	private static final String META_INF = "META-INF";
+
+	private final String[] folderNames;
+	private final int[] folderParents;
+	private final String[] fileNames;
+	// Children of folder f are children[childStart[f]] up to childStart[f + 1], folders as
+	// their id and files as -(id + 1)
+	private final int[] children;
+	private final int[] childStart;
+
+	private ArchiveTreeIndex(String[] folderNames, int[] folderParents, String[] fileNames, int[] children, int[] childStart) {
+		this.folderNames = folderNames;
+		this.folderParents = folderParents;
+		this.fileNames = fileNames;
+		this.children = children;
+		this.childStart = childStart;
+	}
+
+	public static ArchiveTreeIndex create(Collection<String> entryNames) {
+		Map<String, String> segments = new HashMap<String, String>();
+		Map<String, Integer> folders = new HashMap<String, Integer>();
+		List<String> folderNames = new ArrayList<String>();
+		List<String> fileNames = new ArrayList<String>();
+		int[] folderParents = new int[16];
+		int[] fileFolders = new int[Math.max(16, entryNames.size())];
+		List<String> fileEntries = new ArrayList<String>();
+		folderNames.add("");
+		
+		// One pass over every entry, folders are looked up by their path
+		for (String entryName : entryNames) {
+			int parent = ROOT;
+			int start = 0;
+			int length = entryName.length();
+			while (start < length) {
+				int end = entryName.indexOf('/', start);
+				if (end == -1) {
+					if (fileNames.size() == fileFolders.length)
+						fileFolders = Arrays.copyOf(fileFolders, fileFolders.length * 2);
+					fileFolders[fileNames.size()] = parent;
+					fileNames.add(intern(segments, entryName.substring(start)));
+					fileEntries.add(entryName);
+					break;
+				}
+				if (end > start) {
+					String path = entryName.substring(0, end);
+					Integer folder = folders.get(path);
+					if (folder == null) {
+						folder = folderNames.size();
+						if (folder == folderParents.length)
+							folderParents = Arrays.copyOf(folderParents, folderParents.length * 2);
+						folderParents[folder] = parent;
+						folderNames.add(intern(segments, entryName.substring(start, end)));
+						folders.put(path, folder);
+					}
+					parent = folder;
+				}
+				start = end + 1;
+			}
+		}
+		
+		final String[] folderArray = folderNames.toArray(new String[folderNames.size()]);
+		final String[] fileArray = fileNames.toArray(new String[fileNames.size()]);
+		final int[] parents = Arrays.copyOf(folderParents, folderArray.length);
+		final int[] filesFolders = fileFolders;
+		final boolean[] metadata = new boolean[folderArray.length];
+		for (int folder = 1; folder < folderArray.length; folder++)
+			metadata[folder] = metadata[parents[folder]] || (parents[folder] == ROOT && folderArray[folder].equals(META_INF));
+		
+		// Duplicate entries, and files which are also a folder, are shown once
+		List<Integer> items = new ArrayList<Integer>(folderArray.length + fileArray.length);
+		for (int folder = 1; folder < folderArray.length; folder++)
+			items.add(folder);
+		Map<String, Boolean> seen = new HashMap<String, Boolean>();
+		for (int file = 0; file < fileArray.length; file++) {
+			String entryName = fileEntries.get(file);
+			if (!folders.containsKey(entryName) && seen.put(entryName, Boolean.TRUE) == null)
+				items.add(-(file + 1));
+		}
+		
+		// META-INF first, then packages, then files. Within META-INF files and folders are sorted together
+		items.sort(new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				int parent1 = o1 >= 0 ? parents[o1] : filesFolders[-o1 - 1];
+				int parent2 = o2 >= 0 ? parents[o2] : filesFolders[-o2 - 1];
+				if (parent1 != parent2)
+					return Integer.compare(parent1, parent2);
+				int rank = Integer.compare(getRank(o1, parent1), getRank(o2, parent2));
+				if (rank != 0)
+					return rank;
+				String name1 = o1 >= 0 ? folderArray[o1] : fileArray[-o1 - 1];
+				String name2 = o2 >= 0 ? folderArray[o2] : fileArray[-o2 - 1];
+				int order = String.CASE_INSENSITIVE_ORDER.compare(name1, name2);
+				return order != 0 ? order : name1.compareTo(name2);
+			}
+
+			private int getRank(int item, int parent) {
+				if (metadata[parent])
+					return 1;
+				if (item >= 0)
+					return metadata[item] ? 0 : 1;
+				return 2;
+			}
+		});
+		
+		int[] children = new int[items.size()];
+		int[] childStart = new int[folderArray.length + 1];
+		for (int i = 0; i < children.length; i++) {
+			int item = items.get(i);
+			children[i] = item;
+			childStart[(item >= 0 ? parents[item] : filesFolders[-item - 1]) + 1]++;
+		}
+		for (int folder = 0; folder < folderArray.length; folder++)
+			childStart[folder + 1] += childStart[folder];
+		return new ArchiveTreeIndex(folderArray, parents, fileArray, children, childStart);
+	}
+
+	private static String intern(Map<String, String> segments, String segment) {
+		String interned = segments.get(segment);
+		if (interned != null)
+			return interned;
+		segments.put(segment, segment);
+		return segment;
+	}
+
+	public int getChildCount(int folder) {
+		return this.childStart[folder + 1] - this.childStart[folder];
+	}
+
+	public boolean isFolder(int folder, int index) {
+		return this.children[this.childStart[folder] + index] >= 0;
+	}
+
+	public int getChildFolder(int folder, int index) {
+		return this.children[this.childStart[folder] + index];
+	}
+
+	public String getChildName(int folder, int index) {
+		int child = this.children[this.childStart[folder] + index];
+		return child >= 0 ? this.folderNames[child] : this.fileNames[-child - 1];
+	}
+
+	public String getFolderPath(int folder) {
+		// Path of the folder with a trailing slash, empty for the root
+		if (folder == ROOT)
+			return "";
+		return this.getFolderPath(this.folderParents[folder]) + this.folderNames[folder] + "/";
+	}
+
+	public int getFolderCount() {
+		return this.folderNames.length;
+	}
+
+	public int getFileCount() {
+		return this.fileNames.length;
+	}
+
+}
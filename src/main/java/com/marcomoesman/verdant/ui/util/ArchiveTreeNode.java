@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.ui.util;
+
+import java.util.Enumeration;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.MutableTreeNode;
+import javax.swing.tree.TreeNode;
+
+import com.marcomoesman.verdant.util.JarEntryUtility;
+
+public class ArchiveTreeNode extends DefaultMutableTreeNode {
+
+	/**
+	 * Serial Version UID
+	 */
+	private static final long serialVersionUID = 3046395787235001526L;
+
+	private final ArchiveTreeIndex index;
+	private final int folder;
+	// Prepended to the paths of nested archives, for the entries of a nested archive itself
+	private final String entryPrefix;
+	private boolean loaded = false;
+
+	public ArchiveTreeNode(String name, ArchiveTreeIndex index, int folder, String entryPrefix) {
+		super(new TreeNodeUserObject(name));
+		this.index = index;
+		this.folder = folder;
+		this.entryPrefix = entryPrefix;
+	}
+
+	private synchronized void load() {
+		if (this.loaded)
+			return;
+		this.loaded = true;
+		
+		int childCount = this.index.getChildCount(this.folder);
+		for (int i = 0; i < childCount; i++) {
+			String name = this.index.getChildName(this.folder, i);
+			if (this.index.isFolder(this.folder, i)) {
+				super.insert(new ArchiveTreeNode(name, this.index, this.index.getChildFolder(this.folder, i), this.entryPrefix), super.getChildCount());
+			} else if (JarEntryUtility.isNestedArchive(name)) {
+				// Nested archives get a placeholder, their entries are only read once they are expanded
+				DefaultMutableTreeNode nestedArchive = new DefaultMutableTreeNode(new NestedArchiveUserObject(name, this.entryPrefix + this.index.getFolderPath(this.folder) + name));
+				nestedArchive.add(new DefaultMutableTreeNode(new TreeNodeUserObject("", "Loading...")));
+				super.insert(nestedArchive, super.getChildCount());
+			} else {
+				super.insert(new DefaultMutableTreeNode(new TreeNodeUserObject(name)), super.getChildCount());
+			}
+		}
+	}
+
+	@Override
+	public boolean isLeaf() {
+		// Answered from the index, so collapsed folders stay unloaded
+		if (!this.loaded)
+			return this.index.getChildCount(this.folder) == 0;
+		return super.isLeaf();
+	}
+
+	@Override
+	public int getChildCount() {
+		this.load();
+		return super.getChildCount();
+	}
+
+	@Override
+	public TreeNode getChildAt(int index) {
+		this.load();
+		return super.getChildAt(index);
+	}
+
+	@Override
+	public int getIndex(TreeNode node) {
+		this.load();
+		return super.getIndex(node);
+	}
+
+	@Override
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public Enumeration children() {
+		this.load();
+		return super.children();
+	}
+
+	@Override
+	public void insert(MutableTreeNode newChild, int childIndex) {
+		this.load();
+		super.insert(newChild, childIndex);
+	}
+
+	@Override
+	public void remove(int childIndex) {
+		this.load();
+		super.remove(childIndex);
+	}
+
+	public boolean isLoaded() {
+		return this.loaded;
+	}
+
+	public ArchiveTreeIndex getArchiveIndex() {
+		return this.index;
+	}
+
+}
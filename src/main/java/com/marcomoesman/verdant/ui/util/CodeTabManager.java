@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.ui.util;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
+import org.fife.ui.rtextarea.RTextScrollPane;
+
+import com.alee.laf.label.WebLabel;
+import com.alee.laf.panel.WebPanel;
+import com.alee.laf.tabbedpane.WebTabbedPane;
+import com.marcomoesman.verdant.ui.ProjectWindow;
+
+public class CodeTabManager {
+
+	public static final int DEFAULT_MAX_EDITORS = 16;
+
+	private final ProjectWindow projectWindow;
+	private final WebTabbedPane tabbedPane;
+	private final Map<String, CodeTab> tabs;
+	private int maxEditors;
+	// Stamped on a tab when it is selected, the lowest stamp is evicted first
+	private long selections = 0;
+
+	public CodeTabManager(ProjectWindow projectWindow, WebTabbedPane tabbedPane, int maxEditors) {
+		this.projectWindow = projectWindow;
+		this.tabbedPane = tabbedPane;
+		this.tabs = new HashMap<String, CodeTab>();
+		this.maxEditors = Math.max(1, maxEditors);
+		this.tabbedPane.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				CodeTabManager.this.selected();
+			}
+		});
+	}
+
+	public RSyntaxTextArea open(String title, String entryName, String code) {
+		CodeTab tab = this.tabs.get(entryName);
+		if (tab == null) {
+			tab = new CodeTab(entryName);
+			this.tabs.put(entryName, tab);
+			tab.showEditor(code, 0, null);
+			this.tabbedPane.addTab(title, tab);
+		} else if (tab.textArea == null) {
+			tab.showEditor(code, tab.caret, tab.viewPosition);
+		}
+		tab.stamp = ++this.selections;
+		this.tabbedPane.setSelectedComponent(tab);
+		this.evict();
+		return tab.textArea;
+	}
+
+	public void reload(String entryName, String code) {
+		// Placeholders load the current source once they are selected
+		CodeTab tab = this.tabs.get(entryName);
+		if (tab == null || tab.textArea == null)
+			return;
+		int caret = Math.min(tab.textArea.getCaretPosition(), code.length());
+		tab.textArea.setText(code);
+		tab.textArea.setCaretPosition(caret);
+	}
+
+	public void close(String entryName) {
+		CodeTab tab = this.tabs.remove(entryName);
+		if (tab == null)
+			return;
+		tab.closed = true;
+		this.tabbedPane.remove(tab);
+	}
+
+	public void closeAll() {
+		for (String entryName : this.getEntryNames())
+			this.close(entryName);
+	}
+
+	public List<String> getEntryNames() {
+		return new ArrayList<String>(this.tabs.keySet());
+	}
+
+	public String getSelectedEntryName() {
+		Component component = this.tabbedPane.getSelectedComponent();
+		return component instanceof CodeTab ? ((CodeTab) component).entryName : null;
+	}
+
+	public RSyntaxTextArea getSelectedTextArea() {
+		// Null while the selected tab is being reloaded
+		Component component = this.tabbedPane.getSelectedComponent();
+		return component instanceof CodeTab ? ((CodeTab) component).textArea : null;
+	}
+
+	public int getEditorCount() {
+		int count = 0;
+		for (CodeTab tab : this.tabs.values())
+			if (tab.textArea != null)
+				count++;
+		return count;
+	}
+
+	public int getMaxEditors() {
+		return this.maxEditors;
+	}
+
+	public void setMaxEditors(int maxEditors) {
+		this.maxEditors = Math.max(1, maxEditors);
+		this.evict();
+	}
+
+	private void selected() {
+		Component component = this.tabbedPane.getSelectedComponent();
+		if (!(component instanceof CodeTab))
+			return;
+		CodeTab tab = (CodeTab) component;
+		tab.stamp = ++this.selections;
+		if (tab.textArea == null && !tab.loading)
+			this.reload(tab);
+		else
+			this.evict();
+	}
+
+	private void reload(final CodeTab tab) {
+		tab.loading = true;
+		tab.showMessage("Loading...");
+		// The source may have to be read back from disk or decompiled again
+		new Thread() {
+			public void run() {
+				final String code = CodeTabManager.this.projectWindow.getSource(tab.entryName);
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						tab.loading = false;
+						if (tab.closed || tab.textArea != null)
+							return;
+						if (code == null) {
+							// Tried again the next time the tab is selected
+							tab.showMessage("Source is not available");
+							return;
+						}
+						tab.showEditor(code, tab.caret, tab.viewPosition);
+						CodeTabManager.this.evict();
+					}
+				});
+			}
+		}.start();
+	}
+
+	private void evict() {
+		int editors = this.getEditorCount();
+		Component selected = this.tabbedPane.getSelectedComponent();
+		while (editors > this.maxEditors) {
+			CodeTab coldest = null;
+			for (CodeTab tab : this.tabs.values())
+				if (tab.textArea != null && tab != selected && (coldest == null || tab.stamp < coldest.stamp))
+					coldest = tab;
+			if (coldest == null)
+				return;
+			coldest.evict();
+			editors--;
+		}
+	}
+
+	private static class CodeTab extends WebPanel {
+
+		/**
+		 * Serial Version UID
+		 */
+		private static final long serialVersionUID = -6180294353077314871L;
+
+		private final String entryName;
+		private RSyntaxTextArea textArea = null;
+		private RTextScrollPane scrollPane = null;
+		// Where the editor was left, restored when it is created again
+		private int caret = 0;
+		private Point viewPosition = null;
+		private long stamp = 0;
+		private boolean loading = false;
+		private boolean closed = false;
+
+		private CodeTab(String entryName) {
+			super(new BorderLayout());
+			this.entryName = entryName;
+		}
+
+		private void showEditor(String code, int caret, final Point viewPosition) {
+			RSyntaxTextArea textArea = new RSyntaxTextArea(25, 70);
+			textArea.setMarkOccurrences(true);
+			textArea.setClearWhitespaceLinesEnabled(false);
+			textArea.setEditable(false);
+			textArea.setAntiAliasingEnabled(true);
+			textArea.setCodeFoldingEnabled(true);
+			textArea.setSyntaxEditingStyle(RSyntaxTextArea.SYNTAX_STYLE_JAVA);
+			textArea.setText(code);
+			textArea.setCaretPosition(Math.min(caret, code.length()));
+			this.textArea = textArea;
+			this.scrollPane = new RTextScrollPane(textArea);
+			this.removeAll();
+			this.add(this.scrollPane, BorderLayout.CENTER);
+			this.revalidate();
+			this.repaint();
+			if (viewPosition == null)
+				return;
+			// The view can only be moved once the editor is laid out
+			final RTextScrollPane scrollPane = this.scrollPane;
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					scrollPane.getViewport().setViewPosition(viewPosition);
+				}
+			});
+		}
+
+		private void showMessage(String message) {
+			this.removeAll();
+			this.add(new WebLabel(message, WebLabel.CENTER), BorderLayout.CENTER);
+			this.revalidate();
+			this.repaint();
+		}
+
+		private void evict() {
+			this.caret = this.textArea.getCaretPosition();
+			this.viewPosition = this.scrollPane.getViewport().getViewPosition();
+			this.textArea = null;
+			this.scrollPane = null;
+			this.showMessage(" ");
+		}
+
+	}
+
+}
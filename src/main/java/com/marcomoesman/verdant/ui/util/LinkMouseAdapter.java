@@ -26,6 +26,8 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.net.URI;
 
+import com.marcomoesman.verdant.log.Log;
+
 public class LinkMouseAdapter extends MouseAdapter {
 
 	private String link;
@@ -39,7 +41,7 @@ public class LinkMouseAdapter extends MouseAdapter {
 		try {
 			Desktop.getDesktop().browse(new URI(this.link));
 		} catch (Exception e1) {
-			e1.printStackTrace();
+			Log.error("Could not open " + this.link, e1);
 		}
 	}
 	
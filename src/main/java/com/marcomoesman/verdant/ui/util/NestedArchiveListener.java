@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.ui.util;
+
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeWillExpandListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.ExpandVetoException;
+
+import com.marcomoesman.verdant.ui.ProjectWindow;
+
+public class NestedArchiveListener implements TreeWillExpandListener {
+	
+	private final ProjectWindow projectWindow;
+	
+	public NestedArchiveListener(ProjectWindow projectWindow) {
+		this.projectWindow = projectWindow;
+	}
+
+	@Override
+	public void treeWillExpand(TreeExpansionEvent event) throws ExpandVetoException {
+		Object lastPathComponent = event.getPath().getLastPathComponent();
+		if (!(lastPathComponent instanceof DefaultMutableTreeNode))
+			return;
+		
+		final DefaultMutableTreeNode node = (DefaultMutableTreeNode) lastPathComponent;
+		if (!(node.getUserObject() instanceof NestedArchiveUserObject))
+			return;
+		
+		// Nested archives are indexed the first time they are expanded
+		NestedArchiveUserObject userObject = (NestedArchiveUserObject) node.getUserObject();
+		if (userObject.isLoaded())
+			return;
+		userObject.setLoaded(true);
+		new Thread() {
+			public void run() {
+				NestedArchiveListener.this.projectWindow.expandNestedArchive(node);
+			}
+		}.start();
+	}
+
+	@Override
+	public void treeWillCollapse(TreeExpansionEvent event) throws ExpandVetoException {}
+	
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+public class ArchiveEntryIndex {
+
+	// Outer class of an entry as stored in an index file
+	static final int TOP_LEVEL = -1;
+	static final int MISSING_OUTER = -2;
+
+	private final List<String> entryNames;
+	// CRC and size of every entry name, zero when they are not known
+	private long[] crcs;
+	private long[] sizes;
+	private final List<String> visibleEntries;
+	// Top level class entry mapped to the entries of its inner classes
+	private final Map<String, List<String>> innerClasses;
+
+	private ArchiveEntryIndex(int expected) {
+		this.entryNames = new ArrayList<String>(expected);
+		this.crcs = new long[Math.max(16, expected)];
+		this.sizes = new long[Math.max(16, expected)];
+		this.visibleEntries = new ArrayList<String>(expected);
+		this.innerClasses = new HashMap<String, List<String>>();
+	}
+
+	public static ArchiveEntryIndex create(JarFile jarFile) {
+		ArchiveEntryIndex index = new ArchiveEntryIndex(jarFile.size());
+		Enumeration<JarEntry> entries = jarFile.entries();
+		while (entries.hasMoreElements()) {
+			JarEntry entry = entries.nextElement();
+			if (!entry.isDirectory())
+				index.add(entry.getName(), entry.getCrc(), entry.getSize());
+		}
+		index.addOrphans();
+		return index;
+	}
+
+	public static ArchiveEntryIndex create(Collection<String> entryNames) {
+		ArchiveEntryIndex index = new ArchiveEntryIndex(entryNames.size());
+		for (String entryName : entryNames)
+			index.add(entryName, 0, 0);
+		index.addOrphans();
+		return index;
+	}
+
+	static ArchiveEntryIndex create(String[] entryNames, long[] crcs, long[] sizes, int[] outers) {
+		// Read back from an index file, the inner classes are already resolved
+		ArchiveEntryIndex index = new ArchiveEntryIndex(entryNames.length);
+		for (int i = 0; i < entryNames.length; i++) {
+			index.entryNames.add(entryNames[i]);
+			index.crcs[i] = crcs[i];
+			index.sizes[i] = sizes[i];
+			if (outers[i] == TOP_LEVEL) {
+				index.visibleEntries.add(entryNames[i]);
+				continue;
+			}
+			String outerName = outers[i] == MISSING_OUTER ? JarEntryUtility.getOuterClassName(entryNames[i]) : entryNames[outers[i]];
+			index.addInnerClass(outerName, entryNames[i]);
+		}
+		index.addOrphans();
+		return index;
+	}
+
+	private void add(String entryName, long crc, long size) {
+		if (entryName == null)
+			return;
+		entryName = entryName.trim();
+		if (entryName.isEmpty() || entryName.endsWith("/"))
+			return;
+		int slot = this.entryNames.size();
+		if (slot == this.crcs.length) {
+			this.crcs = Arrays.copyOf(this.crcs, slot * 2);
+			this.sizes = Arrays.copyOf(this.sizes, slot * 2);
+		}
+		this.entryNames.add(entryName);
+		this.crcs[slot] = crc;
+		this.sizes[slot] = size;
+
+		if (!entryName.endsWith(".class")) {
+			this.visibleEntries.add(entryName);
+			return;
+		}
+
+		String outerName = JarEntryUtility.getOuterClassName(entryName);
+		if (outerName.equals(entryName)) {
+			this.visibleEntries.add(entryName);
+			return;
+		}
+		this.addInnerClass(outerName, entryName);
+	}
+
+	private void addInnerClass(String outerName, String entryName) {
+		List<String> inner = this.innerClasses.get(outerName);
+		if (inner == null) {
+			inner = new ArrayList<String>(2);
+			this.innerClasses.put(outerName, inner);
+		}
+		inner.add(entryName);
+	}
+
+	private void addOrphans() {
+		// Inner classes without their outer class are shown on their own
+		if (this.innerClasses.isEmpty())
+			return;
+		Set<String> missing = new HashSet<String>(this.innerClasses.keySet());
+		for (String entryName : this.visibleEntries)
+			missing.remove(entryName);
+		for (String outerName : missing)
+			this.visibleEntries.addAll(this.innerClasses.get(outerName));
+	}
+
+	public List<String> getEntryNames() {
+		return Collections.unmodifiableList(this.entryNames);
+	}
+
+	public int size() {
+		return this.entryNames.size();
+	}
+
+	public long getCrc(int entry) {
+		return this.crcs[entry];
+	}
+
+	public long getSize(int entry) {
+		return this.sizes[entry];
+	}
+
+	public List<String> getEntriesWithoutInnerClasses() {
+		return Collections.unmodifiableList(this.visibleEntries);
+	}
+
+	public Map<String, List<String>> getInnerClassMap() {
+		return Collections.unmodifiableMap(this.innerClasses);
+	}
+
+	public List<String> getInnerClasses(String outerEntryName) {
+		List<String> inner = this.innerClasses.get(outerEntryName);
+		if (inner == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(inner);
+	}
+
+	public boolean hasInnerClasses(String outerEntryName) {
+		return this.innerClasses.containsKey(outerEntryName);
+	}
+
+}
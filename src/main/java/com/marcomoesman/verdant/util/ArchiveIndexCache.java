@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.marcomoesman.verdant.log.Log;
+
+public class ArchiveIndexCache {
+
+	private static final int MAGIC = 0x56494458;
+	private static final int VERSION = 1;
+
+	private final File directory;
+
+	public ArchiveIndexCache(File directory) {
+		this.directory = directory;
+	}
+
+	public ArchiveEntryIndex load(File archive) {
+		File file = this.getFile(archive);
+		if (!file.isFile())
+			return null;
+
+		try (RandomAccessFile access = new RandomAccessFile(file, "r"); FileChannel channel = access.getChannel()) {
+			// Read onto the heap instead of mapped, a mapped file can not be replaced on Windows until it is collected
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) != -1)
+				;
+			buffer.flip();
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				return null;
+			// An index of an earlier build of the archive is replaced the next time it is saved
+			if (buffer.getLong() != archive.length() || buffer.getLong() != archive.lastModified())
+				return null;
+			byte[] path = new byte[buffer.getShort() & 0xFFFF];
+			buffer.get(path);
+			if (!archive.getAbsolutePath().equals(new String(path, StandardCharsets.UTF_8)))
+				return null;
+
+			int count = buffer.getInt();
+			String[] entryNames = new String[count];
+			byte[] name = new byte[256];
+			for (int i = 0; i < count; i++) {
+				int shared = buffer.getShort() & 0xFFFF;
+				int length = shared + (buffer.getShort() & 0xFFFF);
+				if (length > name.length)
+					name = Arrays.copyOf(name, Math.max(length, name.length * 2));
+				buffer.get(name, shared, length - shared);
+				entryNames[i] = new String(name, 0, length, StandardCharsets.UTF_8);
+			}
+			long[] crcs = new long[count];
+			for (int i = 0; i < count; i++)
+				crcs[i] = buffer.getInt() & 0xFFFFFFFFL;
+			long[] sizes = new long[count];
+			for (int i = 0; i < count; i++)
+				sizes[i] = buffer.getLong();
+			int[] outers = new int[count];
+			for (int i = 0; i < count; i++)
+				outers[i] = buffer.getInt();
+			return ArchiveEntryIndex.create(entryNames, crcs, sizes, outers);
+		} catch (IOException | RuntimeException exception) {
+			// Unreadable or truncated files are rebuilt from the archive
+			Log.warn("Could not read archive index " + file.getName() + ": " + exception.getMessage());
+			file.delete();
+			return null;
+		}
+	}
+
+	public void save(File archive, ArchiveEntryIndex index) {
+		if (!this.directory.isDirectory() && !this.directory.mkdirs())
+			return;
+
+		final List<String> names = index.getEntryNames();
+		Integer[] order = new Integer[names.size()];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				return names.get(o1).compareTo(names.get(o2));
+			}
+		});
+		Map<String, Integer> positions = new HashMap<String, Integer>(order.length * 2);
+		for (int i = 0; i < order.length; i++)
+			positions.put(names.get(order[i]), i);
+
+		File file = this.getFile(archive);
+		File temporary = new File(this.directory, file.getName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(archive.length());
+			out.writeLong(archive.lastModified());
+			byte[] path = archive.getAbsolutePath().getBytes(StandardCharsets.UTF_8);
+			out.writeShort(path.length);
+			out.write(path);
+
+			out.writeInt(order.length);
+			byte[] previous = new byte[0];
+			for (int i = 0; i < order.length; i++) {
+				byte[] name = names.get(order[i]).getBytes(StandardCharsets.UTF_8);
+				int shared = 0;
+				int limit = Math.min(Math.min(previous.length, name.length), 0xFFFF);
+				while (shared < limit && previous[shared] == name[shared])
+					shared++;
+				out.writeShort(shared);
+				out.writeShort(name.length - shared);
+				out.write(name, shared, name.length - shared);
+				previous = name;
+			}
+			for (int i = 0; i < order.length; i++)
+				out.writeInt((int) index.getCrc(order[i]));
+			for (int i = 0; i < order.length; i++)
+				out.writeLong(index.getSize(order[i]));
+			for (int i = 0; i < order.length; i++)
+				out.writeInt(getOuter(names.get(order[i]), positions));
+		} catch (IOException exception) {
+			Log.warn("Could not write archive index for " + archive.getName() + ": " + exception.getMessage());
+			temporary.delete();
+			return;
+		}
+		// Windows does not rename over an existing file
+		if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file)))
+			temporary.delete();
+	}
+
+	private static int getOuter(String entryName, Map<String, Integer> positions) {
+		if (!entryName.endsWith(".class"))
+			return ArchiveEntryIndex.TOP_LEVEL;
+		String outerName = JarEntryUtility.getOuterClassName(entryName);
+		if (outerName.equals(entryName))
+			return ArchiveEntryIndex.TOP_LEVEL;
+		Integer position = positions.get(outerName);
+		return position == null ? ArchiveEntryIndex.MISSING_OUTER : position;
+	}
+
+	private File getFile(File archive) {
+		// One file per archive path, a new build of the archive replaces the index of the previous one
+		String identity = archive.getAbsolutePath();
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest(identity.getBytes(StandardCharsets.UTF_8));
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < 12; i++)
+				builder.append(String.format("%02x", hash[i]));
+			return new File(this.directory, builder.toString() + ".idx");
+		} catch (NoSuchAlgorithmException exception) {
+			throw new IllegalStateException(exception);
+		}
+	}
+
+	public File getDirectory() {
+		return this.directory;
+	}
+
+}
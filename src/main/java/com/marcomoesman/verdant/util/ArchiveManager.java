@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import com.marcomoesman.verdant.log.Log;
+import com.marcomoesman.verdant.metrics.DecompileMetrics;
+
+public class ArchiveManager {
+
+	// Separates a nested archive from the entries inside of it, as in BOOT-INF/lib/a.jar!/a/A.class
+	public static final String NESTED_SEPARATOR = "!/";
+
+	private final Map<String, JarFile> archives;
+	private final Map<String, MappedArchive> mappedArchives;
+	private final Map<String, ArchiveEntryIndex> entryIndexes;
+	private final AtomicLong opened;
+	private final AtomicLong hits;
+	private final AtomicLong bytesRead;
+
+	private volatile ArchiveIndexCache indexCache = null;
+	private volatile boolean closed = false;
+
+	public ArchiveManager() {
+		this.archives = new ConcurrentHashMap<String, JarFile>();
+		this.mappedArchives = new ConcurrentHashMap<String, MappedArchive>();
+		this.entryIndexes = new ConcurrentHashMap<String, ArchiveEntryIndex>();
+		this.opened = new AtomicLong();
+		this.hits = new AtomicLong();
+		this.bytesRead = new AtomicLong();
+	}
+
+	public JarFile getArchive(File file) throws IOException {
+		this.checkOpen();
+		String path = file.getAbsolutePath();
+		JarFile archive = this.archives.get(path);
+		if (archive != null) {
+			this.hits.incrementAndGet();
+			return archive;
+		}
+
+		synchronized (this.archives) {
+			// Checked again under the lock, an archive opened after close would never be closed
+			this.checkOpen();
+			archive = this.archives.get(path);
+			if (archive == null) {
+				// The central directory is only parsed here, every later lookup shares it
+				archive = new JarFile(file);
+				this.archives.put(path, archive);
+				this.opened.incrementAndGet();
+			} else {
+				this.hits.incrementAndGet();
+			}
+			return archive;
+		}
+	}
+
+	public MappedArchive getNestedArchive(File file, String entryName) throws IOException {
+		this.checkOpen();
+		String path = file.getAbsolutePath() + NESTED_SEPARATOR + entryName;
+		MappedArchive archive = this.mappedArchives.get(path);
+		if (archive != null) {
+			this.hits.incrementAndGet();
+			return archive;
+		}
+
+		synchronized (this.mappedArchives) {
+			this.checkOpen();
+			archive = this.mappedArchives.get(path);
+			if (archive != null) {
+				this.hits.incrementAndGet();
+				return archive;
+			}
+			
+			ByteBuffer buffer = null;
+			MappedArchive outer = this.getMappedArchive(file);
+			if (outer != null && outer.contains(entryName)) {
+				// Fat jars store their libraries uncompressed, so they can be read in place
+				buffer = outer.slice(entryName);
+				if (buffer == null)
+					buffer = ByteBuffer.wrap(outer.read(entryName));
+			} else {
+				buffer = ByteBuffer.wrap(this.readEntry(file, entryName));
+			}
+			archive = new MappedArchive(new File(path), buffer);
+			this.mappedArchives.put(path, archive);
+			this.opened.incrementAndGet();
+			return archive;
+		}
+	}
+
+	public ArchiveEntryIndex getEntryIndex(File file) throws IOException {
+		this.checkOpen();
+		String path = file.getAbsolutePath();
+		ArchiveEntryIndex index = this.entryIndexes.get(path);
+		if (index != null)
+			return index;
+
+		// The tree, the scheduler and the lazy decompiler share one scan of the entries
+		ArchiveIndexCache indexCache = this.indexCache;
+		if (indexCache != null)
+			index = indexCache.load(file);
+		if (index == null) {
+			index = ArchiveEntryIndex.create(this.getArchive(file));
+			if (indexCache != null)
+				indexCache.save(file, index);
+		}
+		this.entryIndexes.put(path, index);
+		return index;
+	}
+
+	public ArchiveEntryIndex getNestedEntryIndex(File file, String entryName) throws IOException {
+		String path = file.getAbsolutePath() + NESTED_SEPARATOR + entryName;
+		ArchiveEntryIndex index = this.entryIndexes.get(path);
+		if (index == null) {
+			index = ArchiveEntryIndex.create(this.getNestedArchive(file, entryName).getEntryNames());
+			this.entryIndexes.put(path, index);
+		}
+		return index;
+	}
+
+	private MappedArchive getMappedArchive(File file) {
+		String path = file.getAbsolutePath();
+		MappedArchive archive = this.mappedArchives.get(path);
+		if (archive != null)
+			return archive;
+		try {
+			archive = new MappedArchive(file);
+		} catch (IOException exception) {
+			// Archives too large to map, nested entries are inflated through the JarFile instead
+			return null;
+		}
+		this.mappedArchives.put(path, archive);
+		return archive;
+	}
+
+	public byte[] readEntry(File file, String entryName) throws IOException {
+		int separator = entryName.lastIndexOf(NESTED_SEPARATOR);
+		if (separator != -1) {
+			long start = System.nanoTime();
+			byte[] bytes = this.getNestedArchive(file, entryName.substring(0, separator)).read(entryName.substring(separator + NESTED_SEPARATOR.length()));
+			this.bytesRead.addAndGet(bytes.length);
+			DecompileMetrics.getInstance().bytecodeRead(bytes.length, System.nanoTime() - start);
+			return bytes;
+		}
+		
+		JarFile archive = this.getArchive(file);
+		ZipEntry entry = archive.getEntry(entryName);
+		if (entry == null)
+			throw new IOException("Entry not found: " + entryName);
+		return this.readEntry(archive, entry);
+	}
+
+	public byte[] readEntry(JarFile archive, ZipEntry entry) throws IOException {
+		// ZipFile streams can be read concurrently
+		long start = System.nanoTime();
+		try (InputStream stream = archive.getInputStream(entry)) {
+			byte[] bytes = readFully(stream, (int) entry.getSize());
+			this.bytesRead.addAndGet(bytes.length);
+			DecompileMetrics.getInstance().bytecodeRead(bytes.length, System.nanoTime() - start);
+			return bytes;
+		}
+	}
+
+	public long getEntryCrc(File file, String entryName) throws IOException {
+		// -1 when there is no such entry, the CRC tells a changed entry apart without reading it
+		int separator = entryName.lastIndexOf(NESTED_SEPARATOR);
+		if (separator != -1) {
+			MappedArchive archive = this.getNestedArchive(file, entryName.substring(0, separator));
+			String innerName = entryName.substring(separator + NESTED_SEPARATOR.length());
+			return archive.contains(innerName) ? archive.getCrc(innerName) & 0xFFFFFFFFL : -1;
+		}
+		ZipEntry entry = this.getArchive(file).getEntry(entryName);
+		return entry == null ? -1 : entry.getCrc();
+	}
+
+	public void close() {
+		synchronized (this.archives) {
+			this.closed = true;
+			for (JarFile archive : this.archives.values()) {
+				try {
+					archive.close();
+				} catch (IOException exception) {
+					Log.error("Could not close " + archive.getName(), exception);
+				}
+			}
+			this.archives.clear();
+		}
+		synchronized (this.mappedArchives) {
+			// Mappings are released once they are no longer referenced
+			this.mappedArchives.clear();
+		}
+		this.entryIndexes.clear();
+	}
+
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	private void checkOpen() throws IOException {
+		if (this.closed)
+			throw new IOException("Archive manager is closed");
+	}
+
+	public void setIndexCache(ArchiveIndexCache indexCache) {
+		this.indexCache = indexCache;
+	}
+
+	public long getOpened() {
+		return this.opened.get();
+	}
+
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	public long getBytesRead() {
+		return this.bytesRead.get();
+	}
+
+	private static byte[] readFully(InputStream stream, int length) throws IOException {
+		byte[] bytes = new byte[length];
+
+		int n = 0;
+		while (n < length) {
+			int count = stream.read(bytes, n, length - n);
+			if (count < 0)
+				throw new IOException("premature end of stream");
+			n += count;
+		}
+
+		return bytes;
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+
+public class ArchiveSnapshot {
+
+	// Entry name mapped to the CRC and size from the central directory
+	private final Map<String, long[]> entries;
+	// Top level class mapped to a signature over itself and its inner classes
+	private final Map<String, Long> shardSignatures;
+
+	private ArchiveSnapshot(Map<String, long[]> entries) {
+		this.entries = entries;
+		this.shardSignatures = new HashMap<String, Long>();
+		for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+			String entryName = entry.getKey();
+			if (!entryName.endsWith(".class"))
+				continue;
+			String shard = JarEntryUtility.getOuterClassName(entryName);
+			long signature = (entryName.hashCode() * 31L + entry.getValue()[0]) * 31L + entry.getValue()[1];
+			// Summed, so the signature does not depend on the order of the entries
+			Long previous = this.shardSignatures.get(shard);
+			this.shardSignatures.put(shard, previous == null ? signature : previous + signature);
+		}
+	}
+
+	public static ArchiveSnapshot create(JarFile jarFile) {
+		return create(ArchiveEntryIndex.create(jarFile));
+	}
+
+	public static ArchiveSnapshot create(ArchiveEntryIndex index) {
+		Map<String, long[]> entries = new HashMap<String, long[]>(index.size() * 2);
+		List<String> entryNames = index.getEntryNames();
+		for (int i = 0; i < entryNames.size(); i++)
+			entries.put(entryNames.get(i), new long[] { index.getCrc(i), index.getSize(i) });
+		return new ArchiveSnapshot(entries);
+	}
+
+	public boolean isShardUnchanged(String shardName, ArchiveSnapshot previous) {
+		Long signature = this.shardSignatures.get(shardName);
+		return signature != null && signature.equals(previous.shardSignatures.get(shardName));
+	}
+
+	public boolean containsShard(String shardName) {
+		return this.shardSignatures.containsKey(shardName);
+	}
+
+	public Set<String> getShardNames() {
+		return this.shardSignatures.keySet();
+	}
+
+	public boolean contains(String entryName) {
+		return this.entries.containsKey(entryName);
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class ClassStructure {
+
+	private ClassStructure() {}
+
+	public static byte[] strip(byte[] classBytes) throws IOException {
+		// Keeps the constant pool, fields, method signatures and all attributes, but drops
+		// method bodies, which a library class does not need to be used as context
+		ConstantPoolReader reader = new ConstantPoolReader(classBytes);
+		int position = reader.getEnd();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(classBytes.length / 2);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.write(classBytes, 0, position);
+
+		// Access flags, this class, super class and interfaces
+		int interfaces = reader.readUnsignedShort(position + 6);
+		int headerLength = 8 + interfaces * 2;
+		out.write(classBytes, position, headerLength);
+		position += headerLength;
+
+		// Fields are copied as they are
+		int start = position;
+		int fields = reader.readUnsignedShort(position);
+		position += 2;
+		for (int i = 0; i < fields; i++)
+			position = skipMember(reader, position);
+		out.write(classBytes, start, position - start);
+
+		int methods = reader.readUnsignedShort(position);
+		out.writeShort(methods);
+		position += 2;
+		for (int i = 0; i < methods; i++) {
+			out.write(classBytes, position, 6);
+			int attributes = reader.readUnsignedShort(position + 6);
+			position += 8;
+			ByteArrayOutputStream kept = new ByteArrayOutputStream();
+			int keptCount = 0;
+			for (int j = 0; j < attributes; j++) {
+				int length = reader.readInt(position + 2);
+				if (!"Code".equals(reader.getUtf8(reader.readUnsignedShort(position)))) {
+					kept.write(classBytes, position, 6 + length);
+					keptCount++;
+				}
+				position += 6 + length;
+			}
+			out.writeShort(keptCount);
+			kept.writeTo(out);
+		}
+
+		// Class attributes, such as the signature and inner classes
+		out.write(classBytes, position, classBytes.length - position);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static int skipMember(ConstantPoolReader reader, int position) {
+		int attributes = reader.readUnsignedShort(position + 6);
+		position += 8;
+		for (int i = 0; i < attributes; i++)
+			position += 6 + reader.readInt(position + 2);
+		return position;
+	}
+
+}
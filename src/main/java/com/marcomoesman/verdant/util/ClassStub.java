@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.util;
+
+import java.io.IOException;
+
+public class ClassStub {
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_PRIVATE = 0x0002;
+	private static final int ACC_PROTECTED = 0x0004;
+	private static final int ACC_STATIC = 0x0008;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SYNCHRONIZED = 0x0020;
+	private static final int ACC_NATIVE = 0x0100;
+	private static final int ACC_INTERFACE = 0x0200;
+	private static final int ACC_ABSTRACT = 0x0400;
+	private static final int ACC_SYNTHETIC = 0x1000;
+	private static final int ACC_ANNOTATION = 0x2000;
+	private static final int ACC_ENUM = 0x4000;
+
+	private ClassStub() {}
+
+	public static String create(byte[] classBytes, String comment) throws IOException {
+		// Declarations only, read straight from the class file without decompiling any code
+		ConstantPoolReader reader = new ConstantPoolReader(classBytes);
+		int position = reader.getEnd();
+		int access = reader.readUnsignedShort(position);
+		String className = reader.getClassName(reader.readUnsignedShort(position + 2));
+		int superIndex = reader.readUnsignedShort(position + 4);
+		int interfaces = reader.readUnsignedShort(position + 6);
+		position += 8;
+
+		StringBuilder builder = new StringBuilder();
+		builder.append("// ").append(comment).append('\n');
+		int packageEnd = className.lastIndexOf('/');
+		if (packageEnd != -1)
+			builder.append("package ").append(className.substring(0, packageEnd).replace('/', '.')).append(";\n\n");
+		
+		String simpleName = className.substring(packageEnd + 1);
+		appendModifiers(builder, access & ~(ACC_SYNCHRONIZED | ACC_INTERFACE | ACC_ABSTRACT), false);
+		if ((access & ACC_ANNOTATION) != 0)
+			builder.append("@interface ");
+		else if ((access & ACC_INTERFACE) != 0)
+			builder.append("interface ");
+		else if ((access & ACC_ENUM) != 0)
+			builder.append("enum ");
+		else
+			builder.append((access & ACC_ABSTRACT) != 0 ? "abstract class " : "class ");
+		builder.append(simpleName);
+		
+		if (superIndex != 0 && (access & (ACC_INTERFACE | ACC_ENUM)) == 0) {
+			String superName = reader.getClassName(superIndex);
+			if (!"java/lang/Object".equals(superName))
+				builder.append(" extends ").append(superName.replace('/', '.'));
+		}
+		for (int i = 0; i < interfaces; i++) {
+			builder.append(i == 0 ? ((access & ACC_INTERFACE) != 0 ? " extends " : " implements ") : ", ");
+			builder.append(reader.getClassName(reader.readUnsignedShort(position + i * 2)).replace('/', '.'));
+		}
+		position += interfaces * 2;
+		builder.append(" {\n");
+
+		int fields = reader.readUnsignedShort(position);
+		position += 2;
+		for (int i = 0; i < fields; i++) {
+			int fieldAccess = reader.readUnsignedShort(position);
+			if ((fieldAccess & ACC_SYNTHETIC) == 0) {
+				builder.append('\t');
+				appendModifiers(builder, fieldAccess & ~ACC_SYNCHRONIZED, false);
+				builder.append(getType(reader.getUtf8(reader.readUnsignedShort(position + 4)), new int[] { 0 })).append(' ');
+				builder.append(reader.getUtf8(reader.readUnsignedShort(position + 2))).append(";\n");
+			}
+			position = skipAttributes(reader, position + 6);
+		}
+		if (fields > 0)
+			builder.append('\n');
+
+		int methods = reader.readUnsignedShort(position);
+		position += 2;
+		for (int i = 0; i < methods; i++) {
+			int methodAccess = reader.readUnsignedShort(position);
+			String name = reader.getUtf8(reader.readUnsignedShort(position + 2));
+			String descriptor = reader.getUtf8(reader.readUnsignedShort(position + 4));
+			position = skipAttributes(reader, position + 6);
+			if ((methodAccess & ACC_SYNTHETIC) != 0 || "<clinit>".equals(name))
+				continue;
+
+			builder.append('\t');
+			appendModifiers(builder, methodAccess, (access & ACC_INTERFACE) != 0);
+			int[] offset = new int[] { 1 };
+			StringBuilder parameters = new StringBuilder();
+			while (descriptor.charAt(offset[0]) != ')') {
+				if (parameters.length() > 0)
+					parameters.append(", ");
+				parameters.append(getType(descriptor, offset));
+			}
+			offset[0]++;
+			if ("<init>".equals(name))
+				builder.append(simpleName.substring(simpleName.lastIndexOf('$') + 1));
+			else
+				builder.append(getType(descriptor, offset)).append(' ').append(name);
+			builder.append('(').append(parameters).append(");\n");
+		}
+		builder.append("}\n");
+		return builder.toString();
+	}
+
+	private static void appendModifiers(StringBuilder builder, int access, boolean interfaceMember) {
+		if ((access & ACC_PUBLIC) != 0 && !interfaceMember)
+			builder.append("public ");
+		if ((access & ACC_PRIVATE) != 0)
+			builder.append("private ");
+		if ((access & ACC_PROTECTED) != 0)
+			builder.append("protected ");
+		if ((access & ACC_STATIC) != 0)
+			builder.append("static ");
+		if ((access & ACC_FINAL) != 0)
+			builder.append("final ");
+		if ((access & ACC_SYNCHRONIZED) != 0)
+			builder.append("synchronized ");
+		if ((access & ACC_NATIVE) != 0)
+			builder.append("native ");
+		if ((access & ACC_ABSTRACT) != 0 && !interfaceMember)
+			builder.append("abstract ");
+	}
+
+	private static String getType(String descriptor, int[] offset) {
+		// Reads one type from the descriptor and moves the offset past it
+		int dimensions = 0;
+		while (descriptor.charAt(offset[0]) == '[') {
+			dimensions++;
+			offset[0]++;
+		}
+		String type;
+		char c = descriptor.charAt(offset[0]++);
+		switch (c) {
+		case 'B': type = "byte"; break;
+		case 'C': type = "char"; break;
+		case 'D': type = "double"; break;
+		case 'F': type = "float"; break;
+		case 'I': type = "int"; break;
+		case 'J': type = "long"; break;
+		case 'S': type = "short"; break;
+		case 'Z': type = "boolean"; break;
+		case 'V': type = "void"; break;
+		case 'L':
+			int end = descriptor.indexOf(';', offset[0]);
+			type = descriptor.substring(offset[0], end).replace('/', '.').replace('$', '.');
+			offset[0] = end + 1;
+			break;
+		default:
+			type = String.valueOf(c);
+		}
+		StringBuilder builder = new StringBuilder(type);
+		for (int i = 0; i < dimensions; i++)
+			builder.append("[]");
+		return builder.toString();
+	}
+
+	private static int skipAttributes(ConstantPoolReader reader, int position) {
+		int attributes = reader.readUnsignedShort(position);
+		position += 2;
+		for (int i = 0; i < attributes; i++)
+			position += 6 + reader.readInt(position + 2);
+		return position;
+	}
+
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ConstantPoolReader {
+
+	public static final int UTF8 = 1;
+	public static final int INTEGER = 3;
+	public static final int FLOAT = 4;
+	public static final int LONG = 5;
+	public static final int DOUBLE = 6;
+	public static final int CLASS = 7;
+	public static final int STRING = 8;
+	public static final int FIELD_REF = 9;
+	public static final int METHOD_REF = 10;
+	public static final int INTERFACE_METHOD_REF = 11;
+	public static final int NAME_AND_TYPE = 12;
+	public static final int METHOD_HANDLE = 15;
+	public static final int METHOD_TYPE = 16;
+	public static final int DYNAMIC = 17;
+	public static final int INVOKE_DYNAMIC = 18;
+	public static final int MODULE = 19;
+	public static final int PACKAGE = 20;
+
+	private final byte[] bytes;
+	private final int count;
+	// Tag and byte offset of every constant, index 0 is unused
+	private final byte[] tags;
+	private final int[] offsets;
+	private final int end;
+
+	public ConstantPoolReader(byte[] bytes) throws IOException {
+		this.bytes = bytes;
+		if (bytes.length < 10 || this.readInt(0) != 0xCAFEBABE)
+			throw new IOException("Not a class file");
+
+		this.count = this.readUnsignedShort(8);
+		this.tags = new byte[this.count];
+		this.offsets = new int[this.count];
+		int position = 10;
+		for (int i = 1; i < this.count; i++) {
+			if (position >= bytes.length)
+				throw new IOException("Truncated constant pool");
+			int tag = bytes[position];
+			this.tags[i] = (byte) tag;
+			this.offsets[i] = position + 1;
+			switch (tag) {
+			case UTF8:
+				position += 3 + this.readUnsignedShort(position + 1);
+				break;
+			case INTEGER:
+			case FLOAT:
+			case FIELD_REF:
+			case METHOD_REF:
+			case INTERFACE_METHOD_REF:
+			case NAME_AND_TYPE:
+			case DYNAMIC:
+			case INVOKE_DYNAMIC:
+				position += 5;
+				break;
+			case LONG:
+			case DOUBLE:
+				// Eight byte constants take up two slots
+				position += 9;
+				i++;
+				break;
+			case CLASS:
+			case STRING:
+			case METHOD_TYPE:
+			case MODULE:
+			case PACKAGE:
+				position += 3;
+				break;
+			case METHOD_HANDLE:
+				position += 4;
+				break;
+			default:
+				throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+		this.end = position;
+	}
+
+	public int getCount() {
+		return this.count;
+	}
+
+	public int getTag(int index) {
+		return this.tags[index];
+	}
+
+	public String getUtf8(int index) {
+		// Indexes come from the class file itself, malformed ones read as missing
+		if (index <= 0 || index >= this.count || this.tags[index] != UTF8)
+			return null;
+		int offset = this.offsets[index];
+		int length = this.readUnsignedShort(offset);
+		for (int i = offset + 2; i < offset + 2 + length; i++) {
+			if (this.bytes[i] >= 0)
+				continue;
+			// Modified UTF-8 writes NUL in two bytes and supplementary characters as two surrogates
+			try {
+				return new DataInputStream(new ByteArrayInputStream(this.bytes, offset, length + 2)).readUTF();
+			} catch (IOException exception) {
+				return null;
+			}
+		}
+		return new String(this.bytes, offset + 2, length, StandardCharsets.ISO_8859_1);
+	}
+
+	public String getClassName(int index) {
+		if (index <= 0 || index >= this.count || this.tags[index] != CLASS)
+			return null;
+		return this.getUtf8(this.readUnsignedShort(this.offsets[index]));
+	}
+
+	public List<String> getClassNames() {
+		List<String> classNames = new ArrayList<String>();
+		for (int i = 1; i < this.count; i++)
+			if (this.tags[i] == CLASS)
+				classNames.add(this.getClassName(i));
+		return classNames;
+	}
+
+	public Set<String> getReferencedTypes() {
+		// Classes in use and the types of declarations, without the primitive arrays
+		Set<String> types = this.getDescriptorTypes();
+		for (int i = 1; i < this.count; i++) {
+			String type = this.tags[i] == CLASS ? getElementType(this.getClassName(i)) : null;
+			if (type != null)
+				types.add(type);
+		}
+		return types;
+	}
+
+	public Set<String> getDescriptorTypes() {
+		// Types which may only occur in descriptors and signatures, such as parameter types
+		Set<String> types = new HashSet<String>();
+		for (int i = 1; i < this.count; i++) {
+			if (this.tags[i] == NAME_AND_TYPE)
+				addDescriptorTypes(this.getUtf8(this.getReference(i, 1)), types);
+			else if (this.tags[i] == METHOD_TYPE)
+				addDescriptorTypes(this.getUtf8(this.getReference(i, 0)), types);
+		}
+
+		// Fields and then methods follow the interfaces, then the attributes of the class
+		int position = this.end + 6;
+		if (position + 2 > this.bytes.length)
+			return types;
+		position += 2 + this.readUnsignedShort(position) * 2;
+		for (int table = 0; table < 2 && position + 2 <= this.bytes.length; table++) {
+			int members = this.readUnsignedShort(position);
+			position += 2;
+			for (int i = 0; i < members && position + 8 <= this.bytes.length; i++) {
+				addDescriptorTypes(this.getUtf8(this.readUnsignedShort(position + 4)), types);
+				position = this.readSignatures(position + 6, types);
+			}
+		}
+		if (position + 2 <= this.bytes.length)
+			this.readSignatures(position, types);
+		return types;
+	}
+
+	private int readSignatures(int position, Set<String> types) {
+		int attributes = this.readUnsignedShort(position);
+		position += 2;
+		for (int i = 0; i < attributes && position + 6 <= this.bytes.length; i++) {
+			int length = this.readInt(position + 2);
+			if (length < 0 || position + 6 + length > this.bytes.length)
+				return this.bytes.length;
+			if (length == 2 && "Signature".equals(this.getUtf8(this.readUnsignedShort(position))))
+				addDescriptorTypes(this.getUtf8(this.readUnsignedShort(position + 6)), types);
+			position += 6 + length;
+		}
+		return position;
+	}
+
+	public static String getElementType(String className) {
+		// Arrays are referenced by their descriptor, such as [Ljava/lang/String;
+		if (className == null || className.isEmpty() || className.charAt(0) != '[')
+			return className;
+		int start = className.lastIndexOf('[') + 1;
+		if (start >= className.length() || className.charAt(start) != 'L' || !className.endsWith(";"))
+			return null;
+		return className.substring(start + 1, className.length() - 1);
+	}
+
+	public static void addDescriptorTypes(String descriptor, Set<String> types) {
+		if (descriptor == null)
+			return;
+		// Class types are L followed by the internal name and ; or < for type arguments. Type variables,
+		// inner class suffixes and type parameter names, which end in :, name no class of their own
+		int length = descriptor.length();
+		int i = 0;
+		while (i < length) {
+			char c = descriptor.charAt(i);
+			if (c != 'L' && c != 'T' && c != '.') {
+				i++;
+				continue;
+			}
+			int end = i + 1;
+			while (end < length && ";<:".indexOf(descriptor.charAt(end)) == -1)
+				end++;
+			if (c == 'L' && end < length && descriptor.charAt(end) != ':')
+				types.add(descriptor.substring(i + 1, end));
+			i = end + 1;
+		}
+	}
+
+	public int getReference(int index, int part) {
+		// Two byte index at the given part of a constant
+		return this.readUnsignedShort(this.offsets[index] + part * 2);
+	}
+
+	public int getEnd() {
+		return this.end;
+	}
+
+	public int readUnsignedShort(int position) {
+		return ((this.bytes[position] & 0xFF) << 8) | (this.bytes[position + 1] & 0xFF);
+	}
+
+	public int readInt(int position) {
+		return ((this.bytes[position] & 0xFF) << 24) | ((this.bytes[position + 1] & 0xFF) << 16)
+				| ((this.bytes[position + 2] & 0xFF) << 8) | (this.bytes[position + 3] & 0xFF);
+	}
+
+	public byte[] getBytes() {
+		return this.bytes;
+	}
+
+}
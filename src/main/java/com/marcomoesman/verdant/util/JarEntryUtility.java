@@ -22,10 +22,10 @@
 package com.marcomoesman.verdant.util;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -49,41 +49,38 @@ public class JarEntryUtility {
 		return mass;
 	}
 
-	public List<String> getEntriesWithoutInnerClasses() {
-		List<String> mass = new ArrayList<>();
-		Enumeration<JarEntry> entries = this.jarFile.entries();
-		Set<String> possibleInnerClasses = new HashSet<String>();
-		Set<String> baseClasses = new HashSet<String>();
+	public ArchiveEntryIndex getEntryIndex() {
+		return ArchiveEntryIndex.create(this.jarFile);
+	}
 
-		while (entries.hasMoreElements()) {
-			JarEntry e = entries.nextElement();
-			if (!e.isDirectory()) {
-				String entryName = e.getName();
+	public List<String> getEntriesWithoutInnerClasses() {
+		return this.getEntryIndex().getEntriesWithoutInnerClasses();
+	}
 
-				if (entryName != null && entryName.trim().length() > 0) {
-					entryName = entryName.trim();
+	public static List<String> getEntriesWithoutInnerClasses(Collection<String> entryNames) {
+		return ArchiveEntryIndex.create(entryNames).getEntriesWithoutInnerClasses();
+	}
 
-					if (!entryName.endsWith(".class")) {
-						mass.add(entryName);
+	public Map<String, List<String>> getInnerClassMap() {
+		return this.getEntryIndex().getInnerClassMap();
+	}
 
-					} else if (entryName.matches(".*[^(/|\\\\)]+\\$[^(/|\\\\)]+$")) {
-						possibleInnerClasses.add(entryName);
+	public static Map<String, List<String>> getInnerClassMap(Collection<String> entryNames) {
+		return ArchiveEntryIndex.create(entryNames).getInnerClassMap();
+	}
 
-					} else {
-						baseClasses.add(entryName);
-						mass.add(entryName);
-					}
-				}
-			}
-		}
+	public static boolean isNestedArchive(String entryName) {
+		String name = entryName.toLowerCase();
+		return name.endsWith(".jar") || name.endsWith(".war") || name.endsWith(".zip");
+	}
 
-		for (String inner : possibleInnerClasses) {
-			String innerWithoutTail = inner.replaceAll("\\$[^(/|\\\\)]+\\.class$", "");
-			if (!baseClasses.contains(innerWithoutTail + ".class")) {
-				mass.add(inner);
-			}
-		}
-		return mass;
+	public static String getOuterClassName(String classEntryName) {
+		// Inner classes belong to the class named before the first $ of their simple name
+		int nameStart = classEntryName.lastIndexOf('/') + 1;
+		int innerStart = classEntryName.indexOf('$', nameStart);
+		if (innerStart <= nameStart)
+			return classEntryName;
+		return classEntryName.substring(0, innerStart) + ".class";
 	}
 
 	public JarFile getJarFile() {
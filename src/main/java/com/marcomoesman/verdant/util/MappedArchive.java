@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+public class MappedArchive {
+
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int CENTRAL_SIGNATURE = 0x02014b50;
+	private static final int LOCAL_SIGNATURE = 0x04034b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int ZIP64_EXTRA = 0x0001;
+	private static final int END_SIZE = 22;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+
+	// Inflaters and input buffers are reused per thread, so readers never contend
+	private static final ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater(true);
+		}
+	};
+	private static final ThreadLocal<byte[][]> BUFFERS = new ThreadLocal<byte[][]>() {
+		@Override
+		protected byte[][] initialValue() {
+			return new byte[][] { new byte[8192] };
+		}
+	};
+
+	private final File file;
+	private final ByteBuffer buffer;
+	private final Map<String, Integer> index;
+	// Offset table, one slot per entry
+	private final int[] localOffsets;
+	private final int[] compressedSizes;
+	private final int[] sizes;
+	private final int[] crcs;
+	private final byte[] methods;
+
+	public MappedArchive(File file) throws IOException {
+		this(file, map(file));
+	}
+
+	public MappedArchive(File file, ByteBuffer buffer) throws IOException {
+		// Nested archives are read from a slice of their outer archive or from memory
+		this.file = file;
+		this.buffer = buffer.slice();
+		this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		int end = this.findEnd();
+		long count = this.buffer.getShort(end + 10) & 0xFFFF;
+		long centralOffset = this.buffer.getInt(end + 16) & 0xFFFFFFFFL;
+		if (count == 0xFFFF || centralOffset == 0xFFFFFFFFL) {
+			// Archives with many entries keep the real values in the ZIP64 end record
+			int locator = end - ZIP64_LOCATOR_SIZE;
+			if (locator < 0 || this.buffer.getInt(locator) != ZIP64_LOCATOR_SIGNATURE)
+				throw new ZipException("Missing ZIP64 end record in " + file);
+			long zip64End = this.buffer.getLong(locator + 8);
+			if (zip64End < 0 || zip64End > locator - 56 || this.buffer.getInt((int) zip64End) != ZIP64_END_SIGNATURE)
+				throw new ZipException("Invalid ZIP64 end record in " + file);
+			count = this.buffer.getLong((int) zip64End + 32);
+			centralOffset = this.buffer.getLong((int) zip64End + 48);
+		}
+		if (count < 0 || count > Integer.MAX_VALUE || centralOffset < 0 || centralOffset >= end)
+			throw new ZipException("Invalid central directory in " + file);
+
+		this.index = new HashMap<String, Integer>((int) count * 2);
+		this.localOffsets = new int[(int) count];
+		this.compressedSizes = new int[(int) count];
+		this.sizes = new int[(int) count];
+		this.crcs = new int[(int) count];
+		this.methods = new byte[(int) count];
+
+		int position = (int) centralOffset;
+		for (int i = 0; i < count; i++) {
+			if (this.buffer.getInt(position) != CENTRAL_SIGNATURE)
+				throw new ZipException("Invalid central directory in " + file);
+			int nameLength = this.buffer.getShort(position + 28) & 0xFFFF;
+			int extraLength = this.buffer.getShort(position + 30) & 0xFFFF;
+			int commentLength = this.buffer.getShort(position + 32) & 0xFFFF;
+
+			this.methods[i] = (byte) this.buffer.getShort(position + 10);
+			this.crcs[i] = this.buffer.getInt(position + 16);
+			this.compressedSizes[i] = this.buffer.getInt(position + 20);
+			this.sizes[i] = this.buffer.getInt(position + 24);
+			this.localOffsets[i] = this.buffer.getInt(position + 42);
+			if (this.sizes[i] == -1 || this.compressedSizes[i] == -1 || this.localOffsets[i] == -1)
+				this.readZip64Extra(i, position + 46 + nameLength, extraLength);
+
+			byte[] name = new byte[nameLength];
+			ByteBuffer slice = this.buffer.duplicate();
+			slice.position(position + 46);
+			slice.get(name);
+			this.index.put(new String(name, StandardCharsets.UTF_8), i);
+
+			position += 46 + nameLength + extraLength + commentLength;
+		}
+	}
+
+	private void readZip64Extra(int slot, int position, int length) throws ZipException {
+		int end = position + length;
+		while (position + 4 <= end) {
+			int id = this.buffer.getShort(position) & 0xFFFF;
+			int size = this.buffer.getShort(position + 2) & 0xFFFF;
+			position += 4;
+			if (id == ZIP64_EXTRA) {
+				// Only the values which did not fit into their field are in the extra, in this order
+				int field = position;
+				if (this.sizes[slot] == -1) {
+					this.sizes[slot] = this.getZip64Value(field, position + size);
+					field += 8;
+				}
+				if (this.compressedSizes[slot] == -1) {
+					this.compressedSizes[slot] = this.getZip64Value(field, position + size);
+					field += 8;
+				}
+				if (this.localOffsets[slot] == -1)
+					this.localOffsets[slot] = this.getZip64Value(field, position + size);
+				return;
+			}
+			position += size;
+		}
+		throw new ZipException("Missing ZIP64 extra in " + this.file);
+	}
+
+	private int getZip64Value(int position, int end) throws ZipException {
+		if (position + 8 > end)
+			throw new ZipException("Truncated ZIP64 extra in " + this.file);
+		long value = this.buffer.getLong(position);
+		if (value < 0 || value > Integer.MAX_VALUE)
+			throw new ZipException("Entry too large to map in " + this.file);
+		return (int) value;
+	}
+
+	private static MappedByteBuffer map(File file) throws IOException {
+		try (RandomAccessFile access = new RandomAccessFile(file, "r"); FileChannel channel = access.getChannel()) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new ZipException("Archive too large to map: " + file);
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	private int findEnd() throws ZipException {
+		// The end record sits before an optional comment of up to 64 KiB
+		int limit = Math.max(0, this.buffer.limit() - END_SIZE - 0xFFFF);
+		for (int position = this.buffer.limit() - END_SIZE; position >= limit; position--) {
+			// The comment may hold the signature itself, the real record ends where its comment ends
+			if (this.buffer.getInt(position) == END_SIGNATURE && position + END_SIZE + (this.buffer.getShort(position + 20) & 0xFFFF) == this.buffer.limit())
+				return position;
+		}
+		throw new ZipException("No end of central directory in " + this.file);
+	}
+
+	public boolean contains(String entryName) {
+		return this.index.containsKey(entryName);
+	}
+
+	public int getCrc(String entryName) {
+		Integer slot = this.index.get(entryName);
+		return slot == null ? 0 : this.crcs[slot];
+	}
+
+	public Set<String> getEntryNames() {
+		return Collections.unmodifiableSet(this.index.keySet());
+	}
+
+	public byte[] read(String entryName) throws IOException {
+		Integer slot = this.index.get(entryName);
+		if (slot == null)
+			throw new IOException("Entry not found: " + entryName);
+
+		// Duplicates share the mapping, only the position is per reader
+		ByteBuffer data = this.buffer.duplicate();
+		data.position(this.getDataOffset(slot, entryName));
+		byte[] bytes = new byte[this.sizes[slot]];
+		switch (this.methods[slot]) {
+		case STORED:
+			data.get(bytes);
+			return bytes;
+		case DEFLATED:
+			return this.inflate(data, this.compressedSizes[slot], bytes, entryName);
+		default:
+			throw new ZipException("Unsupported compression method for " + entryName);
+		}
+	}
+
+	private byte[] inflate(ByteBuffer data, int compressedSize, byte[] bytes, String entryName) throws IOException {
+		byte[][] holder = BUFFERS.get();
+		if (holder[0].length <= compressedSize)
+			holder[0] = new byte[Integer.highestOneBit(compressedSize) << 1];
+		byte[] input = holder[0];
+		data.get(input, 0, compressedSize);
+		// Raw inflation wants one dummy byte after the data
+		input[compressedSize] = 0;
+
+		Inflater inflater = INFLATERS.get();
+		inflater.reset();
+		inflater.setInput(input, 0, compressedSize + 1);
+		try {
+			int offset = 0;
+			while (offset < bytes.length) {
+				int count = inflater.inflate(bytes, offset, bytes.length - offset);
+				if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+					throw new ZipException("Truncated entry " + entryName);
+				offset += count;
+			}
+			return bytes;
+		} catch (DataFormatException exception) {
+			throw new ZipException("Invalid deflate data for " + entryName + ": " + exception.getMessage());
+		}
+	}
+
+	public ByteBuffer slice(String entryName) throws IOException {
+		// Stored entries can be used in place, without copying them out of the mapping
+		Integer slot = this.index.get(entryName);
+		if (slot == null)
+			throw new IOException("Entry not found: " + entryName);
+		if (this.methods[slot] != STORED)
+			return null;
+		ByteBuffer data = this.buffer.duplicate();
+		data.position(this.getDataOffset(slot, entryName));
+		data.limit(data.position() + this.sizes[slot]);
+		return data.slice();
+	}
+
+	private int getDataOffset(int slot, String entryName) throws ZipException {
+		int local = this.localOffsets[slot];
+		if (this.buffer.getInt(local) != LOCAL_SIGNATURE)
+			throw new ZipException("Invalid local header for " + entryName);
+		return local + LOCAL_HEADER_SIZE + (this.buffer.getShort(local + 26) & 0xFFFF) + (this.buffer.getShort(local + 28) & 0xFFFF);
+	}
+
+	public int size() {
+		return this.localOffsets.length;
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+}
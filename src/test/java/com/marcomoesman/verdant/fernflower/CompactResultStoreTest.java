@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.fernflower;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class CompactResultStoreTest {
+
+	@Test
+	public void spillsEntriesPastTheBudget() {
+		CompactResultStore store = new CompactResultStore(1000, false, true);
+		for (int i = 0; i < 10; i++)
+			store.put("Class" + i + ".class", createSource("Class" + i, 0, 400));
+
+		assertTrue("memory used " + store.getMemoryUsed(), store.getMemoryUsed() <= 1000);
+		assertEquals(10, store.getEntryNames().size());
+		for (int i = 0; i < 10; i++)
+			assertTrue(store.contains("Class" + i + ".class"));
+		store.clear();
+	}
+
+	@Test
+	public void readsSpilledEntriesBack() {
+		CompactResultStore store = new CompactResultStore(1000, false, true);
+		for (int i = 0; i < 10; i++)
+			store.put("Class" + i + ".class", createSource("Class" + i, 0, 400));
+
+		// Every read brings an entry back and spills another one
+		for (int round = 0; round < 2; round++) {
+			for (int i = 0; i < 10; i++) {
+				FFDecompiledClass decompiledClass = store.get("Class" + i + ".class");
+				assertNotNull(decompiledClass);
+				assertEquals("Class" + i + ".class", decompiledClass.getEntryName());
+				assertEquals(createSource("Class" + i, 0, 400), decompiledClass.getContent());
+				assertTrue("memory used " + store.getMemoryUsed(), store.getMemoryUsed() <= 1000);
+			}
+		}
+		store.clear();
+	}
+
+	@Test
+	public void dropsEntriesPastTheBudgetWithoutSpilling() {
+		CompactResultStore store = new CompactResultStore(1000, false, false);
+		for (int i = 0; i < 10; i++)
+			store.put("Class" + i + ".class", createSource("Class" + i, 0, 400));
+
+		// Only the most recent entries fit
+		assertTrue("memory used " + store.getMemoryUsed(), store.getMemoryUsed() <= 1000);
+		assertFalse(store.contains("Class0.class"));
+		assertNull(store.get("Class0.class"));
+		assertEquals(createSource("Class9", 0, 400), store.get("Class9.class").getContent());
+	}
+
+	@Test
+	public void compactsTheSpillFile() throws IOException {
+		CompactResultStore store = new CompactResultStore(1000, false, true, 2000);
+		for (int version = 0; version < 50; version++) {
+			for (int i = 0; i < 5; i++)
+				store.put("Class" + i + ".class", createSource("Class" + i, version, 400));
+		}
+
+		// Without compaction every replaced copy would stay, about 100 KB
+		long spillLength = store.getSpillLength();
+		assertTrue("spill length " + spillLength, spillLength > 0 && spillLength < 8000);
+		for (int i = 0; i < 5; i++)
+			assertEquals(createSource("Class" + i, 49, 400), store.get("Class" + i + ".class").getContent());
+		store.clear();
+		assertEquals(0, store.getSpillLength());
+	}
+
+	@Test
+	public void roundTripsCompressedSources() {
+		CompactResultStore store = new CompactResultStore(1 << 20, true, true);
+		String source = createSource("Compressed é中😀", 0, 4000);
+		store.put("Compressed.class", source);
+		store.put("Short.class", "class Short {}");
+
+		// Repeating sources deflate well below their length
+		assertTrue("memory used " + store.getMemoryUsed(), store.getMemoryUsed() < 2000);
+		assertEquals(source, store.get("Compressed.class").getContent());
+		assertEquals("class Short {}", store.get("Short.class").getContent());
+	}
+
+	@Test
+	public void keepsFailedClassesWithoutASource() {
+		CompactResultStore store = new CompactResultStore(1000, true, true);
+		store.put("Failed.class", null);
+		for (int i = 0; i < 10; i++)
+			store.put("Class" + i + ".class", createSource("Class" + i, 0, 400));
+
+		// A failed class takes no memory, so it is never spilled or dropped
+		assertTrue(store.contains("Failed.class"));
+		FFDecompiledClass decompiledClass = store.get("Failed.class");
+		assertNotNull(decompiledClass);
+		assertNull(decompiledClass.getContent());
+
+		store.put("Failed.class", "class Failed {}");
+		assertEquals("class Failed {}", store.get("Failed.class").getContent());
+		store.put("Failed.class", null);
+		assertNull(store.get("Failed.class").getContent());
+		store.clear();
+	}
+
+	private static String createSource(String name, int version, int length) {
+		StringBuilder source = new StringBuilder();
+		while (source.length() < length)
+			source.append("class ").append(name).append(" // version ").append(version).append('\n');
+		return source.substring(0, length);
+	}
+
+}
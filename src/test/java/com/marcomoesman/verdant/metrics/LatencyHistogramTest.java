@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketsCoverEveryValueOnce() {
+		// Each bucket starts right after the upper bound of the one before it
+		long previousUpper = -1;
+		for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+			long lower = previousUpper + 1;
+			long upper = LatencyHistogram.getUpperBound(bucket);
+			assertTrue("bucket " + bucket, upper >= lower);
+			assertEquals("lower bound of bucket " + bucket, bucket, LatencyHistogram.getBucket(lower));
+			assertEquals("upper bound of bucket " + bucket, bucket, LatencyHistogram.getBucket(upper));
+			// Wide buckets stay within a sixteenth of their values
+			assertTrue("width of bucket " + bucket, upper - lower <= Math.max(0, lower / 16));
+			previousUpper = upper;
+		}
+	}
+
+	@Test
+	public void clampsValuesAboveTheLastBucket() {
+		assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.getBucket(Long.MAX_VALUE / 1000));
+		assertEquals(0, LatencyHistogram.getBucket(0));
+		assertEquals(15, LatencyHistogram.getBucket(15));
+		assertEquals(16, LatencyHistogram.getBucket(16));
+	}
+
+	@Test
+	public void reportsPercentilesWithinTheirBucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int micros = 1; micros <= 1000; micros++)
+			histogram.record(micros * 1000L);
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500, histogram.getMeanMicros());
+		assertEquals(1000, histogram.getMaxMicros());
+		long median = histogram.getPercentileMicros(50);
+		assertTrue("median " + median, median >= 500 && median <= 500 + 500 / 16);
+		long p99 = histogram.getPercentileMicros(99);
+		assertTrue("p99 " + p99, p99 >= 990 && p99 <= 1000);
+		// Never above the largest value seen
+		assertEquals(1000, histogram.getPercentileMicros(100));
+	}
+
+	@Test
+	public void countsNegativeAndSubMicrosecondValuesAsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(999);
+
+		assertEquals(2, histogram.getCount());
+		assertEquals(0, histogram.getPercentileMicros(100));
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentileMicros(50));
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Test;
+
+import com.marcomoesman.verdant.fernflower.FernflowerBridge;
+import com.marcomoesman.verdant.util.ConstantPoolReader;
+
+public class ConstantPoolSearchTest {
+
+	@Test
+	public void skipsPrimitiveArrayOwnersAndMalformedClasses() throws Exception {
+		// A constant pool which ends right after the tag of its first constant
+		byte[] broken = { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 0x34, 0, 2, ConstantPoolReader.UTF8 };
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("broken/Broken.class", broken);
+		entries.put("fixture/ArrayCloner.class", readClass(ArrayCloner.class));
+		int[] searched = new int[1];
+		List<SearchResult> found = search(entries, ConstantPoolSearch.MEMBER_REFERENCES, "clone", searched);
+
+		// int[].clone() is skipped, ArrayList.clone() after it is still found
+		assertEquals(2, searched[0]);
+		assertEquals(1, found.size());
+		assertEquals("fixture/ArrayCloner.java", found.get(0).getSourceName());
+		assertTrue(found.get(0).getText().startsWith("java.util.ArrayList.clone"));
+	}
+
+	@Test
+	public void findsLiteralsWithNulAndSupplementaryCharacters() throws Exception {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("fixture/Literals.class", readClass(Literals.class));
+
+		// Class files store these in modified UTF-8, which standard UTF-8 decoding garbles
+		assertEquals(1, search(entries, ConstantPoolSearch.STRING_LITERALS, "\uD83D\uDE00 face", null).size());
+		assertEquals(1, search(entries, ConstantPoolSearch.STRING_LITERALS, "NUL\u0000BYTE", null).size());
+	}
+
+	@Test
+	public void findsClassReferencesOfDescriptors() throws Exception {
+		Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+		entries.put("fixture/Declarations.class", readClass(Declarations.class));
+
+		// Deque is only named by the parameter descriptor and the type argument by the signature
+		List<SearchResult> found = search(entries, ConstantPoolSearch.CLASS_REFERENCES, "Deque", null);
+		assertEquals(1, found.size());
+		assertTrue(found.get(0).getText().startsWith("java.util.Deque"));
+		assertEquals(1, search(entries, ConstantPoolSearch.CLASS_REFERENCES, "java.lang.Thread", null).size());
+	}
+
+	private static List<SearchResult> search(Map<String, byte[]> entries, int kind, String text, final int[] searched) throws Exception {
+		File archive = createArchive(entries);
+		FernflowerBridge fernflowerBridge = new FernflowerBridge();
+		try {
+			final List<SearchResult> found = new ArrayList<SearchResult>();
+			new ConstantPoolSearch(fernflowerBridge, archive, new ArrayList<String>(entries.keySet()), kind, text, kind != ConstantPoolSearch.STRING_LITERALS)
+					.run(new SearchListener() {
+						@Override
+						public void found(List<SearchResult> results) {
+							found.addAll(results);
+						}
+
+						@Override
+						public void finished(int found, int matchedClasses, int searchedClasses, int totalClasses, long millis) {
+							if (searched != null)
+								searched[0] = searchedClasses;
+						}
+					});
+			return found;
+		} finally {
+			fernflowerBridge.getArchiveManager().close();
+			archive.delete();
+		}
+	}
+
+	private static File createArchive(Map<String, byte[]> entries) throws IOException {
+		File archive = File.createTempFile("constant-pool-search", ".jar");
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(archive))) {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				out.putNextEntry(new ZipEntry(entry.getKey()));
+				out.write(entry.getValue());
+				out.closeEntry();
+			}
+		}
+		return archive;
+	}
+
+	private static byte[] readClass(Class<?> type) throws IOException {
+		String resource = "/" + type.getName().replace('.', '/') + ".class";
+		try (InputStream in = type.getResourceAsStream(resource)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+			return out.toByteArray();
+		}
+	}
+
+	static class ArrayCloner {
+
+		int[] copy(int[] values) {
+			return values.clone();
+		}
+
+		@SuppressWarnings("unchecked")
+		ArrayList<String> copy(ArrayList<String> values) {
+			return (ArrayList<String>) values.clone();
+		}
+
+	}
+
+	static class Literals {
+
+		String get(boolean first) {
+			return first ? "smiling \uD83D\uDE00 face" : "a nul\u0000byte";
+		}
+
+	}
+
+	static abstract class Declarations {
+
+		abstract void take(Deque<Thread> deque);
+
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SearchQueryTest {
+
+	@Test
+	public void keepsLiteralsOfRegexQueries() {
+		assertEquals(Arrays.asList("abc"), SearchQuery.getRequiredLiterals("abc"));
+		assertEquals(Arrays.asList("foo", "bar"), SearchQuery.getRequiredLiterals("foo.*bar"));
+		assertEquals(Arrays.asList("colo"), SearchQuery.getRequiredLiterals("colou?r"));
+		assertEquals(Arrays.asList("def"), SearchQuery.getRequiredLiterals("[abc]def"));
+		assertEquals(Arrays.asList("abc"), SearchQuery.getRequiredLiterals("\\d+abc"));
+		assertEquals(Arrays.asList("a.b(c"), SearchQuery.getRequiredLiterals("\\Qa.b(c\\E"));
+		assertEquals(Arrays.asList("get"), SearchQuery.getRequiredLiterals("(?i)get"));
+	}
+
+	@Test
+	public void dropsLiteralsThatAreNotRequired() {
+		// Too short for a trigram, inside an alternation, or read differently with comments enabled
+		assertEquals(Collections.emptyList(), SearchQuery.getRequiredLiterals("ab"));
+		assertEquals(Collections.emptyList(), SearchQuery.getRequiredLiterals("a.b.c"));
+		assertEquals(Collections.emptyList(), SearchQuery.getRequiredLiterals("abc|def"));
+		assertEquals(Collections.emptyList(), SearchQuery.getRequiredLiterals("(?x)abc def"));
+		assertEquals(Collections.emptyList(), SearchQuery.getRequiredLiterals("(abc)"));
+	}
+
+	@Test
+	public void findsShortQueriesInEverySource() {
+		Map<String, String> sources = new LinkedHashMap<String, String>();
+		sources.put("a/A.java", "class A {\n\tint x;\n}");
+		sources.put("b/B.java", "class B {\n}");
+		TrigramIndex index = new TrigramIndex();
+		for (Map.Entry<String, String> source : sources.entrySet())
+			index.add(source.getKey(), source.getValue());
+		SearchQuery query = new SearchQuery("x;", false, true);
+
+		// A query shorter than a trigram has every source as a candidate, the pattern finds the matches
+		int[] candidates = index.getCandidates(query.getLiterals());
+		assertEquals(2, candidates.length);
+		List<SearchResult> results = new ArrayList<SearchResult>();
+		for (int candidate : candidates) {
+			String sourceName = index.getSourceName(candidate);
+			query.findMatches(sourceName, sources.get(sourceName), results, 10);
+		}
+		assertEquals(1, results.size());
+		assertEquals("a/A.java", results.get(0).getSourceName());
+		assertEquals(2, results.get(0).getLine());
+		assertEquals("int x;", results.get(0).getText());
+	}
+
+	@Test
+	public void findsOneResultPerLine() {
+		SearchQuery query = new SearchQuery("map", false, false);
+		List<SearchResult> results = new ArrayList<SearchResult>();
+
+		assertEquals(2, query.findMatches("a/A.java", "Map map;\nint x;\nmap.clear();", results, 10));
+		assertEquals(1, results.get(0).getLine());
+		assertEquals(3, results.get(1).getLine());
+	}
+
+}
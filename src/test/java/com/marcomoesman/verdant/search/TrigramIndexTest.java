@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TrigramIndexTest {
+
+	@Test
+	public void findsSourcesContainingEveryTrigram() {
+		TrigramIndex index = createIndex("class A { Map map; }", "class B { HashMap map; }", "class C { List list; }");
+
+		// Trigrams are case folded, the pattern decides about case afterwards
+		assertArrayEquals(new int[] { 0, 1 }, index.getCandidates(Collections.singletonList("map")));
+		assertArrayEquals(new int[] { 1 }, index.getCandidates(Arrays.asList("hash", "MAP")));
+		assertArrayEquals(new int[0], index.getCandidates(Collections.singletonList("Queue")));
+	}
+
+	@Test
+	public void shortLiteralsMatchEverySource() {
+		TrigramIndex index = createIndex("class A {}", "class B {}", "interface C {}");
+
+		// Literals shorter than a trigram can not narrow the search, so nothing may be left out
+		assertArrayEquals(new int[] { 0, 1, 2 }, index.getCandidates(Collections.singletonList("C")));
+		assertArrayEquals(new int[] { 0, 1, 2 }, index.getCandidates(Collections.singletonList("{}")));
+		assertArrayEquals(new int[] { 0, 1, 2 }, index.getCandidates(Collections.<String>emptyList()));
+	}
+
+	@Test
+	public void skipsReplacedSources() {
+		TrigramIndex index = createIndex("class A { int value; }", "class B {}");
+		index.add("a/A.java", "class A { long other; }");
+
+		assertEquals(2, index.size());
+		assertArrayEquals(new int[0], index.getCandidates(Collections.singletonList("value")));
+		int[] candidates = index.getCandidates(Collections.singletonList("other"));
+		assertEquals(1, candidates.length);
+		assertEquals("a/A.java", index.getSourceName(candidates[0]));
+	}
+
+	@Test
+	public void keepsPostingsOfManySources() {
+		// Enough sources for multi byte deltas and for the trigram table to grow
+		TrigramIndex index = new TrigramIndex();
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			index.add("s/S" + i + ".java", "class S" + i + " { int field" + Integer.toHexString(i * 7919) + "; }" + (i % 300 == 0 ? " marker" : ""));
+			if (i % 300 == 0)
+				expected.add(i);
+		}
+
+		int[] candidates = index.getCandidates(Collections.singletonList("marker"));
+		assertEquals(expected.size(), candidates.length);
+		for (int i = 0; i < candidates.length; i++)
+			assertEquals((int) expected.get(i), candidates[i]);
+		assertEquals(1000, index.getCandidates(Collections.singletonList("class")).length);
+	}
+
+	private static TrigramIndex createIndex(String... sources) {
+		TrigramIndex index = new TrigramIndex();
+		for (int i = 0; i < sources.length; i++)
+			index.add((char) ('a' + i) + "/" + (char) ('A' + i) + ".java", sources[i]);
+		return index;
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.ui.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ArchiveTreeIndexTest {
+
+	@Test
+	public void ordersMetaInfThenPackagesThenFiles() {
+		ArchiveTreeIndex index = ArchiveTreeIndex.create(Arrays.asList("b.txt", "org/B.class", "com/a/A.class", "META-INF/MANIFEST.MF", "a.txt", "Z.properties", "com/Main.class"));
+
+		assertEquals(Arrays.asList("META-INF/", "com/", "org/", "a.txt", "b.txt", "Z.properties"), getChildren(index, ArchiveTreeIndex.ROOT));
+		// Packages keep their folders before their files as well
+		assertEquals(Arrays.asList("a/", "Main.class"), getChildren(index, getFolder(index, "com")));
+		assertEquals("com/a/", index.getFolderPath(getFolder(index, "com", "a")));
+		assertEquals("", index.getFolderPath(ArchiveTreeIndex.ROOT));
+	}
+
+	@Test
+	public void sortsFilesAndFoldersOfMetaInfTogether() {
+		ArchiveTreeIndex index = ArchiveTreeIndex.create(Arrays.asList("META-INF/services/java.sql.Driver", "META-INF/MANIFEST.MF", "META-INF/maven/b/pom.xml", "META-INF/maven/a.txt", "META-INF/LICENSE", "com/META-INF/x.txt", "com/META-INF/y/z.txt"));
+
+		assertEquals(Arrays.asList("LICENSE", "MANIFEST.MF", "maven/", "services/"), getChildren(index, getFolder(index, "META-INF")));
+		// Also in the folders within META-INF
+		assertEquals(Arrays.asList("a.txt", "b/"), getChildren(index, getFolder(index, "META-INF", "maven")));
+		// Only the top level META-INF is treated as metadata
+		assertEquals(Arrays.asList("META-INF/", "com/"), getChildren(index, ArchiveTreeIndex.ROOT));
+		assertEquals(Arrays.asList("y/", "x.txt"), getChildren(index, getFolder(index, "com", "META-INF")));
+	}
+
+	@Test
+	public void showsDuplicateEntriesOnce() {
+		ArchiveTreeIndex index = ArchiveTreeIndex.create(Arrays.asList("a.txt", "com/", "com/A.class", "a.txt", "com/A.class", "lib", "lib/x.jar"));
+
+		// A file which is also a folder is only shown as the folder
+		assertEquals(Arrays.asList("com/", "lib/", "a.txt"), getChildren(index, ArchiveTreeIndex.ROOT));
+		assertEquals(Arrays.asList("A.class"), getChildren(index, getFolder(index, "com")));
+		assertEquals(Arrays.asList("x.jar"), getChildren(index, getFolder(index, "lib")));
+	}
+
+	@Test
+	public void breaksCaseInsensitiveTiesByCase() {
+		ArchiveTreeIndex index = ArchiveTreeIndex.create(Arrays.asList("b.txt", "a.txt", "B.txt", "A.txt", "foo/x", "Foo/y", "META-INF/a", "META-INF/A/b"));
+
+		assertEquals(Arrays.asList("META-INF/", "Foo/", "foo/", "A.txt", "a.txt", "B.txt", "b.txt"), getChildren(index, ArchiveTreeIndex.ROOT));
+		assertEquals(Arrays.asList("A/", "a"), getChildren(index, getFolder(index, "META-INF")));
+	}
+
+	@Test
+	public void handlesAnEmptyArchive() {
+		ArchiveTreeIndex index = ArchiveTreeIndex.create(new ArrayList<String>());
+
+		assertEquals(0, index.getChildCount(ArchiveTreeIndex.ROOT));
+		assertEquals(1, index.getFolderCount());
+		assertEquals(0, index.getFileCount());
+	}
+
+	private static List<String> getChildren(ArchiveTreeIndex index, int folder) {
+		List<String> children = new ArrayList<String>();
+		for (int i = 0; i < index.getChildCount(folder); i++)
+			children.add(index.getChildName(folder, i) + (index.isFolder(folder, i) ? "/" : ""));
+		return children;
+	}
+
+	private static int getFolder(ArchiveTreeIndex index, String... names) {
+		int folder = ArchiveTreeIndex.ROOT;
+		for (String name : names) {
+			int child = -1;
+			for (int i = 0; i < index.getChildCount(folder); i++) {
+				if (index.isFolder(folder, i) && index.getChildName(folder, i).equals(name))
+					child = index.getChildFolder(folder, i);
+			}
+			assertTrue("no folder " + name, child >= 0);
+			folder = child;
+		}
+		return folder;
+	}
+
+}
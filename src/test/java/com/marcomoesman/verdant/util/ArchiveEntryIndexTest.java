@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class ArchiveEntryIndexTest {
+
+	@Test
+	public void findsOuterClassOfInnerClasses() {
+		assertEquals("a/A.class", JarEntryUtility.getOuterClassName("a/A.class"));
+		assertEquals("a/A.class", JarEntryUtility.getOuterClassName("a/A$1.class"));
+		assertEquals("a/A.class", JarEntryUtility.getOuterClassName("a/A$B$C.class"));
+		// A leading $ is part of the name, and a $ in the package does not make a class inner
+		assertEquals("a/$Proxy.class", JarEntryUtility.getOuterClassName("a/$Proxy.class"));
+		assertEquals("a$b/C.class", JarEntryUtility.getOuterClassName("a$b/C.class"));
+	}
+
+	@Test
+	public void groupsInnerClassesUnderTheirOuterClass() {
+		ArchiveEntryIndex index = ArchiveEntryIndex.create(Arrays.asList("a/", "a/A.class", "a/A$1.class", "a/A$B$C.class",
+				"a/B.class", "b/Gone$Orphan.class", "META-INF/MANIFEST.MF", " "));
+
+		// Folders and blank names are left out
+		assertEquals(6, index.size());
+		assertEquals(new HashSet<String>(Arrays.asList("a/A.class", "a/B.class", "b/Gone$Orphan.class", "META-INF/MANIFEST.MF")),
+				new HashSet<String>(index.getEntriesWithoutInnerClasses()));
+		assertEquals(Arrays.asList("a/A$1.class", "a/A$B$C.class"), index.getInnerClasses("a/A.class"));
+		assertTrue(index.hasInnerClasses("a/A.class"));
+		assertFalse(index.hasInnerClasses("a/B.class"));
+		// Inner classes without their outer class are still listed on their own
+		assertEquals(Arrays.asList("b/Gone$Orphan.class"), index.getInnerClasses("b/Gone.class"));
+	}
+
+	@Test
+	public void detectsNestedArchives() {
+		assertTrue(JarEntryUtility.isNestedArchive("BOOT-INF/lib/a.jar"));
+		assertTrue(JarEntryUtility.isNestedArchive("WEB-INF/lib/B.JAR"));
+		assertFalse(JarEntryUtility.isNestedArchive("a/A.class"));
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArchiveIndexCacheTest {
+
+	private File directory;
+	private File archive;
+
+	@Before
+	public void setUp() throws IOException {
+		this.directory = File.createTempFile("archive-index-cache", "");
+		this.directory.delete();
+		this.archive = File.createTempFile("archive-index-cache", ".jar");
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = this.directory.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+		this.directory.delete();
+		this.archive.delete();
+	}
+
+	@Test
+	public void roundTripsIndex() throws IOException {
+		// Names share prefixes, and one inner class has lost its outer class
+		writeArchive(this.archive, "a/A.class", "a/A$Inner.class", "a/Abc.class", "b/Gone$Orphan.class", "META-INF/MANIFEST.MF");
+		ArchiveEntryIndex index;
+		try (JarFile jarFile = new JarFile(this.archive)) {
+			index = ArchiveEntryIndex.create(jarFile);
+		}
+		ArchiveIndexCache cache = new ArchiveIndexCache(this.directory);
+		cache.save(this.archive, index);
+		ArchiveEntryIndex loaded = cache.load(this.archive);
+
+		assertNotNull(loaded);
+		assertEquals(index.size(), loaded.size());
+		assertEquals(getEntries(index), getEntries(loaded));
+		assertEquals(new HashSet<String>(index.getEntriesWithoutInnerClasses()), new HashSet<String>(loaded.getEntriesWithoutInnerClasses()));
+		assertEquals(index.getInnerClassMap(), loaded.getInnerClassMap());
+	}
+
+	@Test
+	public void roundTripsEmptyIndex() throws IOException {
+		ArchiveIndexCache cache = new ArchiveIndexCache(this.directory);
+		cache.save(this.archive, ArchiveEntryIndex.create(Collections.<String>emptyList()));
+		ArchiveEntryIndex loaded = cache.load(this.archive);
+
+		assertNotNull(loaded);
+		assertEquals(0, loaded.size());
+		assertEquals(0, loaded.getEntriesWithoutInnerClasses().size());
+	}
+
+	@Test
+	public void replacesIndexOfEarlierBuild() throws IOException {
+		writeArchive(this.archive, "a/A.class");
+		ArchiveIndexCache cache = new ArchiveIndexCache(this.directory);
+		cache.save(this.archive, ArchiveEntryIndex.create(Collections.singletonList("a/A.class")));
+
+		// Another build of the archive at the same path
+		writeArchive(this.archive, "a/A.class", "a/B.class");
+		this.archive.setLastModified(this.archive.lastModified() - 10000);
+		assertNull(cache.load(this.archive));
+		cache.save(this.archive, ArchiveEntryIndex.create(Arrays.asList("a/A.class", "a/B.class")));
+
+		assertEquals(1, this.directory.listFiles().length);
+		assertEquals(2, cache.load(this.archive).size());
+	}
+
+	private static Map<String, String> getEntries(ArchiveEntryIndex index) {
+		Map<String, String> entries = new HashMap<String, String>();
+		for (int i = 0; i < index.size(); i++)
+			entries.put(index.getEntryNames().get(i), index.getCrc(i) + ":" + index.getSize(i));
+		return entries;
+	}
+
+	private static void writeArchive(File archive, String... entryNames) throws IOException {
+		try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+			for (String entryName : entryNames) {
+				out.putNextEntry(new ZipEntry(entryName));
+				out.write(entryName.getBytes(StandardCharsets.UTF_8));
+				out.closeEntry();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+public class ConstantPoolReaderTest {
+
+	@Test
+	public void decodesModifiedUtf8() throws IOException {
+		String literal = "nul\u0000 and \uD83D\uDE00 and \u00E9";
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeInt(0x34);
+		out.writeShort(4);
+		// Written the way class files store strings, NUL in two bytes and the emoji as two surrogates
+		out.writeByte(ConstantPoolReader.UTF8);
+		out.writeUTF(literal);
+		out.writeByte(ConstantPoolReader.STRING);
+		out.writeShort(1);
+		out.writeByte(ConstantPoolReader.UTF8);
+		out.writeUTF("plain");
+
+		ConstantPoolReader reader = new ConstantPoolReader(bytes.toByteArray());
+		assertEquals(literal, reader.getUtf8(reader.getReference(2, 0)));
+		assertEquals("plain", reader.getUtf8(3));
+		assertEquals(null, reader.getUtf8(2));
+		assertEquals(null, reader.getUtf8(4));
+	}
+
+	@Test
+	public void findsTypesOfDescriptorsAndSignatures() throws IOException {
+		Set<String> types = new ConstantPoolReader(readClass(Declarations.class)).getDescriptorTypes();
+
+		// Field, parameter, array and type argument types, and the bound of a type parameter
+		for (String type : Arrays.asList("java/util/Map", "java/lang/String", "java/util/List", "java/lang/Integer",
+				"java/util/concurrent/Callable", "java/util/Deque", "java/lang/CharSequence"))
+			assertTrue(type, types.contains(type));
+		for (String type : types)
+			assertFalse(type, type.isEmpty() || type.indexOf(';') != -1 || type.indexOf('<') != -1 || type.indexOf(':') != -1);
+	}
+
+	@Test
+	public void skipsTypeVariablesAndTypeParameterNames() {
+		Set<String> types = new HashSet<String>();
+		ConstantPoolReader.addDescriptorTypes("<LEFT:Ljava/lang/Object;>(TLEFT;[La/B;I)La/Outer<TLEFT;>.List<Lc/D;>;", types);
+
+		assertEquals(new HashSet<String>(Arrays.asList("java/lang/Object", "a/B", "a/Outer", "c/D")), types);
+	}
+
+	private static byte[] readClass(Class<?> type) throws IOException {
+		String resource = "/" + type.getName().replace('.', '/') + ".class";
+		try (InputStream in = type.getResourceAsStream(resource)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				out.write(buffer, 0, read);
+			return out.toByteArray();
+		}
+	}
+
+	static abstract class Declarations<LEFT extends CharSequence> {
+
+		Map<String, List<Integer>> values;
+
+		abstract void take(Callable<?> callable, Deque<?>[] deques);
+
+	}
+
+}
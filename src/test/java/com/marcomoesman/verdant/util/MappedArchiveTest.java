@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 Marco Moesman
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+*/
+package com.marcomoesman.verdant.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+public class MappedArchiveTest {
+
+	private static final byte[] CONTENT = "class A {}".getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	public void readsArchiveWithComment() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+			// The comment spells out the end record signature, so only its length can tell them apart
+			out.setComment("PK\u0005\u0006 comment after the end record");
+			putStored(out, "a/Stored.class", CONTENT);
+			out.putNextEntry(new ZipEntry("a/Deflated.class"));
+			out.write(CONTENT);
+			out.closeEntry();
+		}
+
+		MappedArchive archive = new MappedArchive(new File("comment.jar"), ByteBuffer.wrap(bytes.toByteArray()));
+		assertEquals(2, archive.size());
+		assertArrayEquals(CONTENT, archive.read("a/Stored.class"));
+		assertArrayEquals(CONTENT, archive.read("a/Deflated.class"));
+		assertEquals(CONTENT.length, archive.slice("a/Stored.class").remaining());
+	}
+
+	@Test
+	public void readsZip64Archive() throws IOException {
+		// The end record can not hold more than 65534 entries, so the count moves into the ZIP64 end record
+		int count = 0x10000;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+			for (int i = 0; i < count - 1; i++)
+				putStored(out, "e/" + i, new byte[0]);
+			putStored(out, "a/Last.class", CONTENT);
+		}
+
+		MappedArchive archive = new MappedArchive(new File("zip64.jar"), ByteBuffer.wrap(bytes.toByteArray()));
+		assertEquals(count, archive.size());
+		assertTrue(archive.contains("e/0"));
+		assertArrayEquals(CONTENT, archive.read("a/Last.class"));
+	}
+
+	@Test(expected = ZipException.class)
+	public void rejectsArchiveWithoutEndRecord() throws IOException {
+		new MappedArchive(new File("broken.jar"), ByteBuffer.wrap(new byte[64]));
+	}
+
+	private static void putStored(ZipOutputStream out, String name, byte[] content) throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(content.length);
+		entry.setCrc(crc.getValue());
+		out.putNextEntry(entry);
+		out.write(content);
+		out.closeEntry();
+	}
+
+}